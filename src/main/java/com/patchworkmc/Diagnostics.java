@@ -0,0 +1,209 @@
+package com.patchworkmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * Collects the messages reported while patching a mod, so that a message that occurs many times is logged once with
+ * a count and a few examples instead of once per occurrence.
+ *
+ * <p>Messages are grouped by their format string. Only the first few occurrences of each are formatted, and nothing
+ * is done at all for levels that the logger has disabled. This may be used from multiple threads at once.</p>
+ */
+public class Diagnostics {
+	private final int maxExamples;
+	private final Map<String, Category> categories = new ConcurrentHashMap<>();
+	// Set for the diagnostics returned by recording, which pass every message on to the parent
+	private final Diagnostics parent;
+	private final List<Report> reports;
+
+	public Diagnostics() {
+		this(Integer.getInteger("patchwork:diagnostic_examples", 5));
+	}
+
+	/**
+	 * @param maxExamples the number of occurrences of each message to keep as examples
+	 */
+	public Diagnostics(int maxExamples) {
+		this(maxExamples, null, null);
+	}
+
+	private Diagnostics(int maxExamples, Diagnostics parent, List<Report> reports) {
+		this.maxExamples = maxExamples;
+		this.parent = parent;
+		this.reports = reports;
+	}
+
+	/**
+	 * Creates diagnostics that report every message to these ones, and also keep it so that it can be
+	 * {@link #replay replayed} later, such as when a class is served from a cache rather than patched again.
+	 *
+	 * @param reports receives the messages that are reported, at the levels that are enabled
+	 */
+	public Diagnostics recording(List<Report> reports) {
+		return new Diagnostics(maxExamples, this, reports);
+	}
+
+	/**
+	 * Reports messages that were kept by {@link #recording} again.
+	 */
+	public void replay(List<Report> reports) {
+		for (Report report : reports) {
+			if (isEnabled(report.level)) {
+				record(report.level, report.format, (Object[]) report.args);
+			}
+		}
+	}
+
+	/**
+	 * Checks if messages at a level are kept. This can be used to skip work that only exists to produce a message.
+	 */
+	public boolean isEnabled(Level level) {
+		return Patchwork.LOGGER.isEnabled(level);
+	}
+
+	public void report(Level level, String format, Object arg) {
+		if (isEnabled(level)) {
+			record(level, format, arg);
+		}
+	}
+
+	public void report(Level level, String format, Object arg1, Object arg2) {
+		if (isEnabled(level)) {
+			record(level, format, arg1, arg2);
+		}
+	}
+
+	public void report(Level level, String format, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(level)) {
+			record(level, format, arg1, arg2, arg3);
+		}
+	}
+
+	private void record(Level level, String format, Object... args) {
+		if (parent != null) {
+			reports.add(new Report(level, format, args));
+			parent.record(level, format, args);
+
+			return;
+		}
+
+		Category category = categories.computeIfAbsent(format, key -> new Category(level));
+
+		if (category.count.getAndIncrement() < maxExamples) {
+			String example = String.format(format, args);
+
+			synchronized (category.examples) {
+				category.examples.add(example);
+			}
+		}
+	}
+
+	/**
+	 * Logs a summary of every message reported so far, then forgets them.
+	 *
+	 * @param mod the name of the mod the messages were reported for
+	 * @return the summary that was logged, or an empty string if nothing was reported
+	 */
+	public String summarize(String mod) {
+		if (categories.isEmpty()) {
+			return "";
+		}
+
+		Map<Level, StringBuilder> summaries = new ConcurrentHashMap<>();
+
+		categories.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> {
+			Category category = entry.getValue();
+			int count = category.count.get();
+			StringBuilder summary = summaries.computeIfAbsent(category.level, key -> new StringBuilder());
+
+			summary.append(String.format("%n - %s (%d times)", entry.getKey(), count));
+
+			for (String example : category.examples) {
+				summary.append(String.format("%n    %s", example));
+			}
+
+			if (count > category.examples.size()) {
+				summary.append(String.format("%n    ... and %d more", count - category.examples.size()));
+			}
+		});
+
+		StringBuilder logged = new StringBuilder();
+
+		summaries.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> {
+			Patchwork.LOGGER.log(entry.getKey(), "Diagnostics for %s:%s", mod, entry.getValue());
+
+			if (logged.length() > 0) {
+				logged.append(String.format("%n"));
+			}
+
+			logged.append(String.format("[%s] Diagnostics for %s:%s", entry.getKey(), mod, entry.getValue()));
+		});
+
+		categories.clear();
+
+		return logged.toString();
+	}
+
+	/**
+	 * A message kept by {@link #recording}, with its arguments already converted to strings.
+	 */
+	public static class Report {
+		private final Level level;
+		private final String format;
+		private final String[] args;
+
+		private Report(Level level, String format, Object[] args) {
+			this.level = level;
+			this.format = format;
+			this.args = new String[args.length];
+
+			for (int i = 0; i < args.length; i++) {
+				this.args[i] = String.valueOf(args[i]);
+			}
+		}
+
+		/**
+		 * Writes the message in a binary form that can be read back with {@link #read(DataInput)}.
+		 */
+		public void write(DataOutput output) throws IOException {
+			output.writeUTF(level.name());
+			output.writeUTF(format);
+			output.writeInt(args.length);
+
+			for (String arg : args) {
+				output.writeUTF(arg);
+			}
+		}
+
+		public static Report read(DataInput input) throws IOException {
+			Level level = Level.toLevel(input.readUTF());
+			String format = input.readUTF();
+			String[] args = new String[input.readInt()];
+
+			for (int i = 0; i < args.length; i++) {
+				args[i] = input.readUTF();
+			}
+
+			return new Report(level, format, args);
+		}
+	}
+
+	private static class Category {
+		private final Level level;
+		private final AtomicInteger count = new AtomicInteger();
+		private final List<String> examples = new ArrayList<>();
+
+		private Category(Level level) {
+			this.level = level;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.patchworkmc;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits how many bytes of class data are being worked on at once. Work that would go over the budget blocks until
+ * enough of the work before it has finished, which keeps the heap bounded however many jars or classes are patched in
+ * parallel.
+ *
+ * <p>A single piece of work larger than the whole budget is still allowed, but only while nothing else is running.</p>
+ */
+public class MemoryBudget {
+	// Permits are kilobytes, so that budgets of more than 2 GiB fit in the int permits of a semaphore
+	private static final int UNIT = 1024;
+
+	private final int totalPermits;
+	private final Semaphore semaphore;
+
+	public MemoryBudget(long bytes) {
+		this.totalPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / UNIT));
+		this.semaphore = new Semaphore(totalPermits, true);
+	}
+
+	/**
+	 * @return the budget set by the {@code patchwork:memory_budget_mb} system property, or null if there is none
+	 */
+	public static MemoryBudget fromProperties() {
+		Long megabytes = Long.getLong("patchwork:memory_budget_mb");
+
+		return megabytes == null ? null : new MemoryBudget(megabytes * 1024 * 1024);
+	}
+
+	/**
+	 * Waits until the given number of bytes are available, and takes them.
+	 *
+	 * @return a ticket that gives the bytes back once closed
+	 */
+	public Ticket acquire(long bytes) throws InterruptedException {
+		int permits = toPermits(bytes);
+
+		semaphore.acquire(permits);
+
+		return new Ticket(permits);
+	}
+
+	/**
+	 * Like {@link #acquire(long)}, for callers that can't be interrupted, such as tasks of a parallel stream.
+	 */
+	public Ticket acquireUninterruptibly(long bytes) {
+		int permits = toPermits(bytes);
+
+		semaphore.acquireUninterruptibly(permits);
+
+		return new Ticket(permits);
+	}
+
+	/**
+	 * Takes the given number of bytes if they are available right away.
+	 *
+	 * @return a ticket that gives the bytes back once closed, or null if there are not enough bytes available
+	 */
+	public Ticket tryAcquire(long bytes) {
+		int permits = toPermits(bytes);
+
+		return semaphore.tryAcquire(permits) ? new Ticket(permits) : null;
+	}
+
+	private int toPermits(long bytes) {
+		return (int) Math.min(totalPermits, Math.max(1, (bytes + UNIT - 1) / UNIT));
+	}
+
+	public class Ticket implements AutoCloseable {
+		private final int permits;
+		private boolean released;
+
+		private Ticket(int permits) {
+			this.permits = permits;
+		}
+
+		@Override
+		public void close() {
+			if (!released) {
+				released = true;
+				semaphore.release(permits);
+			}
+		}
+	}
+}
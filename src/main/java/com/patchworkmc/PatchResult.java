@@ -0,0 +1,84 @@
+package com.patchworkmc;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import com.patchworkmc.transformer.ConstantPoolScanner.Stage;
+
+/**
+ * The result of patching a single jar through one of the {@code Patchwork.patchAsync} methods.
+ */
+public class PatchResult {
+	private final String modId;
+	private final byte[] patchedJar;
+	private final List<byte[]> devJars;
+	private final Duration duration;
+	private final String diagnostics;
+	private final Map<Stage, Integer> stageCounts;
+	private final boolean fusedRemap;
+
+	PatchResult(String modId, byte[] patchedJar, List<byte[]> devJars, Duration duration, String diagnostics, Map<Stage, Integer> stageCounts, boolean fusedRemap) {
+		this.modId = modId;
+		this.patchedJar = patchedJar;
+		this.devJars = devJars;
+		this.duration = duration;
+		this.diagnostics = diagnostics;
+		this.stageCounts = stageCounts;
+		this.fusedRemap = fusedRemap;
+	}
+
+	/**
+	 * @return the id of the primary mod of the jar
+	 */
+	public String getModId() {
+		return modId;
+	}
+
+	/**
+	 * @return the patched jar, or null if it was written to a sink supplied by the caller
+	 */
+	public byte[] getPatchedJar() {
+		return patchedJar;
+	}
+
+	/**
+	 * @return the patched jar remapped with each set of dev mappings, in the order the mappings were given in
+	 */
+	public List<byte[]> getDevJars() {
+		return devJars;
+	}
+
+	/**
+	 * @return how long patching took, not counting time spent waiting for the executor
+	 */
+	public Duration getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return the summary of the diagnostics reported while patching the classes of the jar, as it was logged, or an
+	 *         empty string if there were none
+	 */
+	public String getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * @return how many classes of the jar each stage of the patch chain was applied to, see
+	 *         {@link com.patchworkmc.transformer.PatchworkTransformer#getStageCounts()}
+	 */
+	public Map<Stage, Integer> getStageCounts() {
+		return stageCounts;
+	}
+
+	/**
+	 * @return whether the classes of the jar were remapped by {@link com.patchworkmc.mapping.remapper.AsmRemapper} in the
+	 *         same pass as they were patched, rather than by tiny-remapper. That remapper leaves members it can't resolve
+	 *         unmapped, which are listed in {@link #getDiagnostics()}. This is always the case for jars patched from
+	 *         memory.
+	 */
+	public boolean isFusedRemap() {
+		return fusedRemap;
+	}
+}
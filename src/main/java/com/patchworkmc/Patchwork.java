@@ -1,32 +1,58 @@
 package com.patchworkmc;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import com.electronwill.nightconfig.core.file.FileConfig;
+import com.electronwill.nightconfig.toml.TomlParser;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.objectweb.asm.ClassReader;
 
 import net.fabricmc.tinyremapper.IMappingProvider;
 import net.fabricmc.tinyremapper.NonClassCopyMode;
@@ -39,8 +65,20 @@ import net.patchworkmc.manifest.api.Remapper;
 import net.patchworkmc.manifest.mod.ManifestParseException;
 import net.patchworkmc.manifest.mod.ModManifest;
 
+import com.patchworkmc.analysis.ModpackAnalyzer;
+import com.patchworkmc.analysis.ModpackReport;
 import com.patchworkmc.annotation.AnnotationStorage;
+import com.patchworkmc.data.ArtifactStore;
+import com.patchworkmc.jar.ClasspathStub;
 import com.patchworkmc.jar.ForgeModJar;
+import com.patchworkmc.jar.JarOutput;
+import com.patchworkmc.jar.MetaInf;
+import com.patchworkmc.jar.NestedJarPatcher;
+import com.patchworkmc.jar.OutputMode;
+import com.patchworkmc.jar.ParallelZipWriter;
+import com.patchworkmc.jar.RawZipFile;
+import com.patchworkmc.jar.RawZipWriter;
+import com.patchworkmc.lazy.LazyPatcher;
 import com.patchworkmc.manifest.converter.accesstransformer.AccessTransformerConverter;
 import com.patchworkmc.manifest.converter.mod.ModManifestConverter;
 import com.patchworkmc.mapping.BridgedMappings;
@@ -50,12 +88,22 @@ import com.patchworkmc.mapping.TinyWriter;
 import com.patchworkmc.mapping.Tsrg;
 import com.patchworkmc.mapping.TsrgClass;
 import com.patchworkmc.mapping.TsrgMappings;
+import com.patchworkmc.mapping.remapper.AsmRemapper;
 import com.patchworkmc.mapping.remapper.ManifestRemapperImpl;
 import com.patchworkmc.mapping.remapper.PatchworkRemapper;
+import com.patchworkmc.shard.ShardCoordinator;
+import com.patchworkmc.shard.ShardReport;
+import com.patchworkmc.transformer.ClassCache;
+import com.patchworkmc.transformer.ClassHierarchy;
+import com.patchworkmc.transformer.ConstantPoolScanner.Stage;
 import com.patchworkmc.transformer.PatchworkTransformer;
 
 public class Patchwork {
 	public static final Logger LOGGER = LogManager.getFormatterLogger("Patchwork");
+	// Rough multiples of the size of a class that are in memory while it is patched: the original bytes, the remapped
+	// and patched bytes, and for tiny-remapper, the trees it builds of every class.
+	private static final int CLASS_OVERHEAD = 3;
+	private static final int TINY_REMAPPER_OVERHEAD = 10;
 	private static String version = "1.14.4";
 
 	private byte[] patchworkGreyscaleIcon;
@@ -65,7 +113,11 @@ public class Patchwork {
 	private IMappingProvider primaryMappings;
 	private List<IMappingProvider> devMappings;
 	private PatchworkRemapper patchworkRemapper;
+	private AsmRemapper asmRemapper;
 	private Remapper accessTransformerRemapper;
+	private ClassHierarchy minecraftHierarchy;
+	private ClassCache classCache;
+	private MemoryBudget memoryBudget;
 	private final MemberInfo memberInfo;
 	private boolean closed = false;
 
@@ -97,7 +149,14 @@ public class Patchwork {
 		}
 
 		this.patchworkRemapper = new PatchworkRemapper(this.primaryMappings);
+		this.asmRemapper = new AsmRemapper(this.patchworkRemapper);
 		this.accessTransformerRemapper = new ManifestRemapperImpl(this.primaryMappings, this.patchworkRemapper);
+		this.classCache = ClassCache.fromProperties(dataDir, this.patchworkRemapper);
+		this.memoryBudget = MemoryBudget.fromProperties();
+	}
+
+	public static String getMinecraftVersion() {
+		return version;
 	}
 
 	public int patchAndFinish() throws IOException {
@@ -112,12 +171,12 @@ public class Patchwork {
 			mods = parseAllManifests(inputFilesStream);
 		}
 
+		ClassHierarchy batchHierarchy = indexHierarchy(mods.stream().map(ForgeModJar::getJarPath).collect(Collectors.toList()));
+
 		for (ForgeModJar mod : mods) {
 			try {
-				transformMod(mod);
+				patchMod(mod, batchHierarchy);
 				count++;
-
-				generateDevJarsForOneModJar(mod);
 			} catch (Exception ex) {
 				LOGGER.throwing(Level.ERROR, ex);
 			}
@@ -127,6 +186,31 @@ public class Patchwork {
 		return count;
 	}
 
+	/**
+	 * Patches a single mod jar into the output folder, the same way {@link #patchAndFinish()} does for each mod.
+	 *
+	 * @param batchHierarchy the hierarchy of the mods patched along with this one, see {@link #indexHierarchy(List)}
+	 * @return the id of the primary mod of the jar
+	 */
+	public String patchMod(Path jar, ClassHierarchy batchHierarchy) throws IOException, URISyntaxException, ManifestParseException {
+		return patchMod(parseModManifest(jar), batchHierarchy);
+	}
+
+	private String patchMod(ForgeModJar mod, ClassHierarchy batchHierarchy) throws IOException, URISyntaxException {
+		Path output = outputDir.resolve(mod.getJarPath().getFileName().toString().split("\\.jar")[0] + ".jar");
+
+		PatchedMod patched;
+
+		try (RawZipFile input = new RawZipFile(mod.getJarPath());
+				JarOutput writer = OutputMode.fromProperties().open(output, memoryBudget)) {
+			patched = transformMod(mod, input, batchHierarchy, writer);
+		}
+
+		generateDevJarsForOneModJar(mod);
+
+		return patched.modId;
+	}
+
 	private List<ForgeModJar> parseAllManifests(Stream<Path> modJars) {
 		ArrayList<ForgeModJar> mods = new ArrayList<>();
 
@@ -141,6 +225,207 @@ public class Patchwork {
 		return mods;
 	}
 
+	/**
+	 * Indexes the supertypes of every class of every mod and of Minecraft, so that mods can be checked against classes
+	 * outside of themselves. Classes are indexed by their intermediary names.
+	 */
+	public ClassHierarchy indexHierarchy(List<Path> jars) {
+		LOGGER.info("Indexing the class hierarchy of %s jars", jars.size());
+
+		PatchworkRemapper.Naive naive = patchworkRemapper.getNaiveRemapper();
+
+		return ClassHierarchy.index(jars, naive::getClass, getMinecraftHierarchy());
+	}
+
+	/**
+	 * Profiles mod jars without remapping or patching them, see {@link ModpackAnalyzer}.
+	 */
+	public ModpackReport analyze(List<Path> jars) {
+		return new ModpackAnalyzer(patchworkRemapper.getNaiveRemapper()).analyze(jars);
+	}
+
+	/**
+	 * @return the index of the Minecraft classes, which is built the first time it is needed and then reused
+	 */
+	private synchronized ClassHierarchy getMinecraftHierarchy() {
+		if (minecraftHierarchy == null) {
+			PatchworkRemapper.Naive naive = patchworkRemapper.getNaiveRemapper();
+			List<Path> jars = Files.exists(clientJarSrg) ? Collections.singletonList(getClasspath(clientJarSrg)) : Collections.emptyList();
+
+			minecraftHierarchy = ClassHierarchy.index(jars, naive::getClass);
+		}
+
+		return minecraftHierarchy;
+	}
+
+	/**
+	 * Patches a single mod jar, without going through the input or output folders. Unlike {@link #patchAndFinish()},
+	 * this may be called any number of times, including concurrently, and reuses the mappings loaded by this instance.
+	 *
+	 * <p>The patched jar is assembled in memory and written to the sink, so nothing is written to disk, with one
+	 * exception: when there are dev mappings, the patched jar and its dev jars go through a scratch directory under the
+	 * temp folder, since tiny-remapper only reads and writes files. The directory is deleted before the future
+	 * completes.</p>
+	 *
+	 * @param jar      the mod jar
+	 * @param sink     receives the patched jar, or null to return it in the result instead
+	 * @param executor the executor to patch on
+	 */
+	public CompletableFuture<PatchResult> patchAsync(Path jar, OutputStream sink, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return patch(jar, sink);
+			} catch (Exception ex) {
+				throw new CompletionException(ex);
+			}
+		}, executor);
+	}
+
+	public CompletableFuture<PatchResult> patchAsync(Path jar, Executor executor) {
+		return patchAsync(jar, null, executor);
+	}
+
+	/**
+	 * Patches a mod jar held in memory, like {@link #patchAsync(Path, OutputStream, Executor)} but without writing the
+	 * jar to disk.
+	 *
+	 * <p>tiny-remapper only reads jars from files, so classes are always remapped and patched in a single pass by
+	 * {@link AsmRemapper}, as with {@code patchwork:fused_remap}, whatever that property is set to. That remapper leaves
+	 * members it can't resolve unmapped, so the same jar may come out differently than when it is patched from a path
+	 * with tiny-remapper. {@link PatchResult#isFusedRemap()} tells which remapper was used, and the members left unmapped
+	 * are in {@link PatchResult#getDiagnostics()}.</p>
+	 *
+	 * <p>The only files written are an access transformer, which can only be parsed from a file, and the scratch
+	 * directory dev jars are generated in, when there are dev mappings. Those are deleted right away.</p>
+	 */
+	public CompletableFuture<PatchResult> patchAsync(byte[] jar, OutputStream sink, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return patch(jar, sink);
+			} catch (Exception ex) {
+				throw new CompletionException(ex);
+			}
+		}, executor);
+	}
+
+	public CompletableFuture<PatchResult> patchAsync(byte[] jar, Executor executor) {
+		return patchAsync(jar, null, executor);
+	}
+
+	/**
+	 * Patches a mod jar read from a channel, starting at its current position. The rest of the channel is read into
+	 * memory, see {@link #patchAsync(byte[], OutputStream, Executor)}.
+	 */
+	public CompletableFuture<PatchResult> patchAsync(SeekableByteChannel jar, OutputStream sink, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return patch(IOUtils.toByteArray(Channels.newInputStream(jar)), sink);
+			} catch (Exception ex) {
+				throw new CompletionException(ex);
+			}
+		}, executor);
+	}
+
+	public CompletableFuture<PatchResult> patchAsync(SeekableByteChannel jar, Executor executor) {
+		return patchAsync(jar, null, executor);
+	}
+
+	private PatchResult patch(Path jar, OutputStream sink) throws IOException, URISyntaxException, ManifestParseException {
+		long start = System.nanoTime();
+		ForgeModJar mod = parseModManifest(jar);
+		PatchworkRemapper.Naive naive = patchworkRemapper.getNaiveRemapper();
+		ClassHierarchy hierarchy = ClassHierarchy.index(Collections.singletonList(jar), naive::getClass, getMinecraftHierarchy());
+
+		try (RawZipFile input = new RawZipFile(jar)) {
+			return patch(mod, input, hierarchy, sink, (int) Math.min(Integer.MAX_VALUE - 8, Files.size(jar)), start);
+		}
+	}
+
+	private PatchResult patch(byte[] jar, OutputStream sink) throws IOException, ManifestParseException {
+		long start = System.nanoTime();
+
+		try (RawZipFile input = new RawZipFile(jar)) {
+			ForgeModJar mod = parseModManifest(input);
+			PatchworkRemapper.Naive naive = patchworkRemapper.getNaiveRemapper();
+			ClassHierarchy hierarchy = ClassHierarchy.index(input, naive::getClass, getMinecraftHierarchy());
+
+			return patch(mod, input, hierarchy, sink, jar.length, start);
+		}
+	}
+
+	/**
+	 * Patches a mod jar into the sink, or into memory if there is none.
+	 *
+	 * @param sizeHint the size of the mod jar, which the patched jar is usually close to
+	 * @param start    when patching started, as given by {@link System#nanoTime()}
+	 */
+	private PatchResult patch(ForgeModJar mod, RawZipFile input, ClassHierarchy hierarchy, OutputStream sink, int sizeHint, long start) throws IOException {
+		List<IMappingProvider> devMappings = getDevMappings();
+		// Dev jars are remapped from the patched jar, so it is kept even if it goes to a sink
+		ByteArrayOutputStream output = sink == null || !devMappings.isEmpty() ? new ByteArrayOutputStream(sizeHint) : null;
+		PatchedMod patched;
+
+		try (JarOutput writer = new ParallelZipWriter(Channels.newChannel(output != null ? output : sink), ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION, false, memoryBudget)) {
+			patched = transformMod(mod, input, hierarchy, writer);
+		}
+
+		List<byte[]> devJars = devMappings.isEmpty() ? new ArrayList<>() : remapDevJars(devMappings, output.toByteArray());
+		byte[] patchedJar = null;
+
+		if (sink == null) {
+			patchedJar = output.toByteArray();
+		} else if (output != null) {
+			output.writeTo(sink);
+		}
+
+		return new PatchResult(patched.modId, patchedJar, devJars, Duration.ofNanos(System.nanoTime() - start), patched.diagnostics, patched.stageCounts, patched.fused);
+	}
+
+	/**
+	 * Remaps a patched jar held in memory with each set of dev mappings. tiny-remapper only reads and writes files, so
+	 * this happens in a scratch directory under the temp folder, which is deleted once the dev jars are read back.
+	 */
+	private List<byte[]> remapDevJars(List<IMappingProvider> devMappings, byte[] patchedJar) throws IOException {
+		Path scratch = Files.createTempDirectory(tempDir, "patch");
+
+		try {
+			Path input = scratch.resolve("patched.jar");
+			List<byte[]> devJars = new ArrayList<>();
+
+			Files.write(input, patchedJar);
+
+			for (int i = 0; i < devMappings.size(); i++) {
+				Path devJar = scratch.resolve("dev-" + i + ".jar");
+
+				remap(devMappings.get(i), input, devJar, getClasspath(dataDir.resolve(version + "-client+intermediary.jar")));
+				devJars.add(Files.readAllBytes(devJar));
+			}
+
+			return devJars;
+		} finally {
+			FileUtils.deleteDirectory(scratch.toFile());
+		}
+	}
+
+	/**
+	 * What {@link #transformMod} found out about a mod while patching it.
+	 */
+	private static class PatchedMod {
+		// The id of the primary mod of the jar
+		private final String modId;
+		private final String diagnostics;
+		private final Map<Stage, Integer> stageCounts;
+		// Whether the classes were remapped by AsmRemapper rather than tiny-remapper
+		private final boolean fused;
+
+		private PatchedMod(String modId, String diagnostics, Map<Stage, Integer> stageCounts, boolean fused) {
+			this.modId = modId;
+			this.diagnostics = diagnostics;
+			this.stageCounts = stageCounts;
+			this.fused = fused;
+		}
+	}
+
 	private ForgeModJar parseModManifest(Path jarPath) throws IOException, URISyntaxException, ManifestParseException {
 		String mod = jarPath.getFileName().toString().split("\\.jar")[0];
 		// Load metadata
@@ -162,8 +447,42 @@ public class Patchwork {
 			}
 		}
 
-		Map<String, Object> map = toml.valueMap();
+		return createModJar(jarPath, toml.valueMap(), at);
+	}
 
+	/**
+	 * Reads the metadata of a mod jar held in memory, see {@link #parseModManifest(Path)}. The access transformer is
+	 * briefly written to the temp folder, since it can only be parsed from a file.
+	 */
+	private ForgeModJar parseModManifest(RawZipFile jar) throws IOException, ManifestParseException {
+		LOGGER.trace("Loading and parsing metadata for an in-memory jar");
+
+		Map<String, Object> toml = null;
+		ForgeAccessTransformer at = null;
+
+		for (RawZipFile.Entry entry : jar.getEntries()) {
+			if (entry.getName().equals("META-INF/mods.toml")) {
+				toml = new TomlParser().parse(new StringReader(new String(jar.readContent(entry), StandardCharsets.UTF_8))).valueMap();
+			} else if (entry.getName().equals("META-INF/accesstransformer.cfg")) {
+				Path atPath = Files.createTempFile(tempDir, "accesstransformer", ".cfg");
+
+				try {
+					Files.write(atPath, jar.readContent(entry));
+					at = ForgeAccessTransformer.parse(atPath);
+				} finally {
+					Files.delete(atPath);
+				}
+			}
+		}
+
+		if (toml == null) {
+			throw new NoSuchFileException("META-INF/mods.toml");
+		}
+
+		return createModJar(null, toml, at);
+	}
+
+	private ForgeModJar createModJar(Path jarPath, Map<String, Object> map, ForgeAccessTransformer at) throws ManifestParseException {
 		ModManifest manifest = ModManifest.parse(map);
 
 		if (!manifest.getModLoader().equals("javafml")) {
@@ -177,36 +496,59 @@ public class Patchwork {
 		return new ForgeModJar(jarPath, manifest, at);
 	}
 
-	private void transformMod(ForgeModJar forgeModJar) throws IOException, URISyntaxException {
+	/**
+	 * @param input the mod jar, which is in memory if the path of the mod is null
+	 */
+	private PatchedMod transformMod(ForgeModJar forgeModJar, RawZipFile input, ClassHierarchy batchHierarchy, JarOutput writer) throws IOException {
 		Path jarPath = forgeModJar.getJarPath();
 		ModManifest manifest = forgeModJar.getManifest();
-		String mod = jarPath.getFileName().toString().split("\\.jar")[0];
+		String mod = jarPath != null ? jarPath.getFileName().toString().split("\\.jar")[0] : "in-memory jar";
+		boolean lazy = System.getProperty("patchwork:lazy_patching", "false").equals("true");
+		// Lazy patching leaves classes in their original form, which only the fused path can do, and tiny-remapper can
+		// only read jars from files. Callers report which path was taken, since the two remap unresolved members
+		// differently.
+		boolean fused = lazy || jarPath == null || System.getProperty("patchwork:fused_remap", "false").equals("true");
+		boolean patchNestedJars = System.getProperty("patchwork:patch_nested_jars", "false").equals("true");
 
-		LOGGER.info("Remapping and patching %s (TinyRemapper, srg -> intermediary)", mod);
-		Path output = outputDir.resolve(mod + ".jar");
-		// Delete old patched jar
-		Files.deleteIfExists(output);
-		TinyRemapper remapper = null;
+		LOGGER.info("Remapping and patching %s (%s, srg -> intermediary)", mod, fused ? "ASM" : "TinyRemapper");
 
-		OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(output).build();
 		AnnotationStorage annotationStorage = new AnnotationStorage();
-		PatchworkTransformer transformer = new PatchworkTransformer(outputConsumer, patchworkRemapper, annotationStorage);
 		JsonArray patchworkEntrypoints = new JsonArray();
+		Set<String> deferredClasses = lazy ? ConcurrentHashMap.newKeySet() : null;
 
-		try {
-			remapper = remap(primaryMappings, jarPath, transformer, clientJarSrg);
+		// Patched classes go straight to the output, compressed by the threads that patched them
+		BiConsumer<String, byte[]> classConsumer = (name, content) -> writer.accept(name + ".class", content);
+		PatchworkTransformer transformer = new PatchworkTransformer(classConsumer, patchworkRemapper, annotationStorage, batchHierarchy);
+		transformer.setCache(classCache);
 
-			// Write the ForgeInitializer
-			transformer.finish(patchworkEntrypoints::add);
-			outputConsumer.addNonClassFiles(jarPath, NonClassCopyMode.FIX_META_INF, remapper);
-		} finally {
-			if (remapper != null) {
-				remapper.finish();
-			}
+		if (fused) {
+			remapAndPatch(input, transformer, classConsumer, deferredClasses);
+		} else {
+			MemoryBudget.Ticket jarTicket = null;
+			TinyRemapper remapper = null;
 
-			outputConsumer.close();
+			try {
+				if (memoryBudget != null) {
+					// tiny-remapper holds every class of the jar until it is finished with
+					jarTicket = memoryBudget.acquireUninterruptibly(getClassBytes(input) * TINY_REMAPPER_OVERHEAD);
+				}
+
+				remapper = remap(primaryMappings, jarPath, transformer, getClasspath(clientJarSrg));
+			} finally {
+				if (remapper != null) {
+					remapper.finish();
+				}
+
+				if (jarTicket != null) {
+					jarTicket.close();
+				}
+			}
 		}
 
+		// Write the ForgeInitializer
+		transformer.finish(patchworkEntrypoints::add);
+		String diagnostics = transformer.getDiagnostics().summarize(mod);
+
 		// Done remapping/patching
 
 		LOGGER.info("Rewriting mod metadata for %s", mod);
@@ -223,13 +565,17 @@ public class Patchwork {
 		primary.add("entrypoints", entrypoints);
 
 		JsonArray jarsArray = new JsonArray();
+		Set<String> jarPaths = new HashSet<>();
+		Map<JsonObject, String> subJarPaths = new LinkedHashMap<>();
 
 		for (JsonObject m : mods) {
 			if (m != primary) {
 				String modid = m.getAsJsonPrimitive("id").getAsString();
+				String path = NestedJarPatcher.getJarPath(modid, jarPaths);
 				JsonObject file = new JsonObject();
-				file.addProperty("file", "META-INF/jars/" + modid + ".jar");
+				file.addProperty("file", path);
 				jarsArray.add(file);
+				subJarPaths.put(m, path);
 				JsonObject custom = m.getAsJsonObject("custom");
 				custom.addProperty("modmenu:parent", primaryModId);
 				custom.addProperty("patchwork:parent", primaryModId);
@@ -242,6 +588,18 @@ public class Patchwork {
 			}
 		}
 
+		// Library jars bundled in the mod are patched too, and moved to where Fabric looks for jar-in-jar mods
+		Map<String, NestedJarPatcher.Result> nestedJars = patchNestedJars ? patchNestedJars(input, primaryModId, batchHierarchy) : Collections.emptyMap();
+		Map<String, byte[]> nestedJarOutputs = new LinkedHashMap<>();
+
+		for (NestedJarPatcher.Result nested : nestedJars.values()) {
+			String path = NestedJarPatcher.getJarPath(nested.getModId(), jarPaths);
+			JsonObject file = new JsonObject();
+			file.addProperty("file", path);
+			jarsArray.add(file);
+			nestedJarOutputs.put(path, nested.getJar());
+		}
+
 		primary.add("jars", jarsArray);
 
 		String modid = primary.getAsJsonPrimitive("id").getAsString();
@@ -252,76 +610,86 @@ public class Patchwork {
 			primary.addProperty("accessWidener", accessWidenerName);
 		}
 
-		String json = gson.toJson(primary);
+		// Everything Patchwork generates, which replaces any resource of the mod at the same path
+		Map<String, byte[]> generated = new LinkedHashMap<>();
+		generated.put("fabric.mod.json", gson.toJson(primary).getBytes(StandardCharsets.UTF_8));
 
-		URI outputJar = new URI("jar:" + output.toUri().toString());
-		FileSystem fs = FileSystems.newFileSystem(outputJar, Collections.emptyMap());
-		Path fabricModJson = fs.getPath("/fabric.mod.json");
+		if (at != null) {
+			generated.put(accessWidenerName, AccessTransformerConverter.convertToWidener(at, memberInfo));
+		}
 
-		try {
-			Files.delete(fabricModJson);
+		String annotationsName = AnnotationStorage.relativePath.substring(1);
 
-			if (at != null) {
-				Files.delete(fs.getPath("/META-INF/accesstransformer.cfg"));
+		// Write annotation data, streamed since it can be large
+		if (!annotationStorage.isEmpty()) {
+			try (Writer annotations = new BufferedWriter(new OutputStreamWriter(writer.openEntry(annotationsName), StandardCharsets.UTF_8))) {
+				if (System.getProperty("patchwork:compact_annotations", "false").equals("true")) {
+					annotationStorage.writeCompact(annotations);
+				} else {
+					gson.toJson(annotationStorage, annotations);
+				}
 			}
-		} catch (IOException ignored) {
-			// ignored
 		}
 
-		Files.write(fabricModJson, json.getBytes(StandardCharsets.UTF_8));
+		// Write patchwork logo
+		this.writeLogo(primary, generated::put);
 
-		if (at != null) {
-			Files.write(fs.getPath("/" + accessWidenerName), AccessTransformerConverter.convertToWidener(at, memberInfo));
+		for (Map.Entry<JsonObject, String> subJar : subJarPaths.entrySet()) {
+			generated.put(subJar.getValue(), createSubJar(subJar.getKey()));
 		}
 
-		// Write annotation data
-		if (!annotationStorage.isEmpty()) {
-			Path annotationJsonPath = fs.getPath(AnnotationStorage.relativePath);
-			Files.write(annotationJsonPath, annotationStorage.toJson(gson).getBytes(StandardCharsets.UTF_8));
+		generated.putAll(nestedJarOutputs);
+
+		if (lazy) {
+			generated.put(LazyPatcher.INDEX, LazyPatcher.writeIndex(deferredClasses));
 		}
 
-		// Write patchwork logo
-		this.writeLogo(primary, fs);
+		generated.forEach(writer);
 
-		try {
-			Files.createDirectory(fs.getPath("/META-INF/jars/"));
-		} catch (IOException ignored) {
-			// ignored
-		}
+		Set<String> replaced = new HashSet<>(generated.keySet());
+		replaced.add(annotationsName);
+		replaced.add("META-INF/mods.toml");
+		replaced.add("pack.mcmeta");
+		// The original of a nested jar may be at a different path than its patched version
+		replaced.addAll(nestedJars.keySet());
 
-		for (JsonObject entry : mods) {
-			if (entry == primary) {
-				// Don't write the primary jar as a jar-in-jar!
-				continue;
-			}
+		if (at != null) {
+			replaced.add("META-INF/accesstransformer.cfg");
+		}
 
-			// generate the jar
-			Path subJarPath = tempDir.resolve(modid + ".jar");
-			Map<String, String> env = new HashMap<>();
-			env.put("create", "true");
-			FileSystem subFs = FileSystems.newFileSystem(new URI("jar:" + subJarPath.toUri().toString()), env);
+		copyResources(input, writer, replaced);
 
-			// Write patchwork logo
-			this.writeLogo(entry, subFs);
+		// Late entrypoints
+		// https://github.com/CottonMC/Cotton/blob/master/modules/cotton-datapack/src/main/java/io/github/cottonmc/cotton/datapack/mixins/MixinCottonInitializerServer.java
 
-			// Write the fabric.mod.json
-			Path modJsonPath = subFs.getPath("/fabric.mod.json");
-			Files.write(modJsonPath, entry.toString().getBytes(StandardCharsets.UTF_8));
+		return new PatchedMod(modid, diagnostics, transformer.getStageCounts(), fused);
+	}
 
-			subFs.close();
+	/**
+	 * @return a jar with nothing but the fabric.mod.json and icon of a mod declared in the mods.toml of another
+	 */
+	private byte[] createSubJar(JsonObject fabricModJson) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (ZipOutputStream subJar = new ZipOutputStream(bytes)) {
+			BiConsumer<String, byte[]> entries = (name, content) -> {
+				try {
+					subJar.putNextEntry(new ZipEntry(name));
+					subJar.write(content);
+					subJar.closeEntry();
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			};
 
-			Files.write(fs.getPath("/META-INF/jars/" + modid + ".jar"), Files.readAllBytes(subJarPath));
+			// Write patchwork logo
+			this.writeLogo(fabricModJson, entries);
 
-			Files.delete(subJarPath);
+			// Write the fabric.mod.json
+			entries.accept("fabric.mod.json", fabricModJson.toString().getBytes(StandardCharsets.UTF_8));
 		}
 
-		Path manifestPath = fs.getPath("/META-INF/mods.toml");
-		Files.delete(manifestPath);
-		Files.delete(fs.getPath("pack.mcmeta"));
-		fs.close();
-
-		// Late entrypoints
-		// https://github.com/CottonMC/Cotton/blob/master/modules/cotton-datapack/src/main/java/io/github/cottonmc/cotton/datapack/mixins/MixinCottonInitializerServer.java
+		return bytes.toByteArray();
 	}
 
 	private void finish() {
@@ -355,17 +723,134 @@ public class Patchwork {
 		return remapper;
 	}
 
-	private void writeLogo(JsonObject json, FileSystem fs) throws IOException {
+	/**
+	 * @return the signature-only stub of a Minecraft jar to remap against, see {@link ClasspathStub}
+	 */
+	private static Path getClasspath(Path jar) {
+		try {
+			return ClasspathStub.of(jar);
+		} catch (IOException ex) {
+			LOGGER.warn("Remapping against the full %s, as its stub could not be generated: %s", jar.getFileName(), ex.getMessage());
+
+			return jar;
+		}
+	}
+
+	/**
+	 * Remaps and patches every class of a jar in a single pass per class, using {@link AsmRemapper} in place of
+	 * tiny-remapper.
+	 *
+	 * @param deferredClasses receives the names of the classes that are copied as is to be patched on load, see
+	 *                        {@link LazyPatcher}, or null to patch every class now
+	 */
+	private void remapAndPatch(RawZipFile input, PatchworkTransformer transformer, BiConsumer<String, byte[]> outputConsumer, Set<String> deferredClasses) {
+		List<RawZipFile.Entry> classFiles = input.getEntries().stream()
+				.filter(entry -> entry.getName().endsWith(".class"))
+				.collect(Collectors.toList());
+
+		// PatchworkTransformer is safe to use from multiple threads, so classes are patched in parallel. Each class is
+		// handed to the output as soon as it is patched, which spools it to disk once compressed, and the output charges
+		// the classes waiting to be compressed to the memory budget too, so with a budget the memory used stays bounded.
+		classFiles.parallelStream().forEach(classFile -> {
+			try (MemoryBudget.Ticket ticket = memoryBudget == null ? null : memoryBudget.acquireUninterruptibly(classFile.getSize() * CLASS_OVERHEAD)) {
+				byte[] content = input.readContent(classFile);
+
+				if (deferredClasses != null && LazyPatcher.canDefer(content, patchworkRemapper)) {
+					String name = asmRemapper.map(new ClassReader(content).getClassName());
+
+					deferredClasses.add(name);
+					outputConsumer.accept(name, content);
+				} else {
+					transformer.acceptUnmapped(content, asmRemapper);
+				}
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+	}
+
+	/**
+	 * @return the total uncompressed size of the classes in a jar
+	 */
+	private static long getClassBytes(RawZipFile jar) {
+		return jar.getEntries().stream()
+				.filter(entry -> entry.getName().endsWith(".class"))
+				.mapToLong(RawZipFile.Entry::getSize)
+				.sum();
+	}
+
+	/**
+	 * Patches the jars nested in a mod jar in memory, see {@link NestedJarPatcher}.
+	 *
+	 * @return the patched jars, by their path in the mod jar
+	 */
+	private Map<String, NestedJarPatcher.Result> patchNestedJars(RawZipFile jar, String modId, ClassHierarchy batchHierarchy) throws IOException {
+		NestedJarPatcher patcher = new NestedJarPatcher(patchworkRemapper, asmRemapper, batchHierarchy, classCache, memoryBudget);
+		Map<String, NestedJarPatcher.Result> patched = new LinkedHashMap<>();
+
+		for (RawZipFile.Entry entry : jar.getEntries()) {
+			if (NestedJarPatcher.isNestedJar(entry.getName())) {
+				patched.put(entry.getName(), patcher.patch(entry.getName(), jar.readContent(entry), modId));
+			}
+		}
+
+		return patched;
+	}
+
+	/**
+	 * Copies the resources of a mod jar that are not replaced into the patched jar, see {@link JarOutput#copy}. The
+	 * META-INF is fixed up for the remapped classes, like tiny-remapper does, see {@link MetaInf}.
+	 *
+	 * @param replaced the names of the resources that are left out
+	 */
+	private void copyResources(RawZipFile input, JarOutput output, Set<String> replaced) throws IOException {
+		UnaryOperator<String> classNames = asmRemapper::map;
+
+		for (RawZipFile.Entry entry : input.getEntries()) {
+			String name = entry.getName();
+
+			// Classes have already been patched, and the signatures would no longer match them
+			if (name.endsWith(".class") || replaced.contains(name) || MetaInf.isSignature(name)) {
+				continue;
+			}
+
+			if (name.equals(MetaInf.MANIFEST)) {
+				output.add(name, entry.getTime(), MetaInf.fixManifest(input.readContent(entry), classNames));
+			} else if (MetaInf.isService(name)) {
+				output.add(MetaInf.fixServiceName(name, classNames), entry.getTime(), MetaInf.fixService(input.readContent(entry), classNames));
+			} else {
+				output.copy(input, entry);
+			}
+		}
+	}
+
+	private void writeLogo(JsonObject json, BiConsumer<String, byte[]> output) {
 		if (json.getAsJsonPrimitive("icon").getAsString().equals("assets/patchwork-generated/icon.png")) {
-			Files.createDirectories(fs.getPath("assets/patchwork-generated/"));
-			Files.write(fs.getPath("assets/patchwork-generated/icon.png"), patchworkGreyscaleIcon);
+			output.accept("assets/patchwork-generated/icon.png", patchworkGreyscaleIcon);
+		}
+	}
+
+	/**
+	 * @return the mappings to generate dev jars with, which is none when classes are patched lazily, as their
+	 * deferred classes are still in srg
+	 */
+	private List<IMappingProvider> getDevMappings() {
+		if (!devMappings.isEmpty() && System.getProperty("patchwork:lazy_patching", "false").equals("true")) {
+			LOGGER.warn("Not generating dev jars, as they can't be generated from lazily patched mods");
+
+			return Collections.emptyList();
 		}
+
+		return devMappings;
 	}
 
 	private void generateDevJarsForOneModJar(ForgeModJar mod) {
 		Path relativeJarPath = inputDir.relativize(mod.getJarPath());
 		Path patchedJarPath = outputDir.resolve(relativeJarPath);
 		String modName = patchedJarPath.getFileName().toString().split("\\.jar")[0];
+		// tiny-remapper reads directories the same way as jars
+		patchedJarPath = OutputMode.fromProperties().getOutputPath(patchedJarPath);
+		List<IMappingProvider> devMappings = getDevMappings();
 
 		for (int i = 0; i < devMappings.size(); i++) {
 			IMappingProvider mappingProvider = devMappings.get(i);
@@ -374,7 +859,7 @@ public class Patchwork {
 				remap(
 						mappingProvider, patchedJarPath,
 						outputDir.resolve(modName + "-dev-" + i + ".jar"),
-						dataDir.resolve(version + "-client+intermediary.jar")
+						getClasspath(dataDir.resolve(version + "-client+intermediary.jar"))
 				);
 				LOGGER.info("Dev jar generated %s", relativeJarPath);
 			} catch (IOException ex) {
@@ -384,42 +869,77 @@ public class Patchwork {
 	}
 
 	public static void main(String[] args) throws Exception {
-		File current = new File(System.getProperty("user.dir"));
-		Path currentPath = current.toPath();
-		File voldemapTiny = new File(current, "data/mappings/voldemap-" + version + ".tiny");
-		List<TsrgClass<RawMapping>> classes = Tsrg.readMappings(new FileInputStream(new File(current, "data/mappings/voldemap-" + version + ".tsrg")));
+		Path currentPath = new File(System.getProperty("user.dir")).toPath();
+		int workers = Integer.getInteger("patchwork:shard_workers", 0);
+
+		if (System.getProperty("patchwork:analyze", "false").equals("true")) {
+			// Only reads the mods, nothing is patched
+			Path inputDir = Files.createDirectories(currentPath.resolve("input"));
+
+			try (Stream<Path> jars = Files.walk(inputDir).filter(file -> file.toString().endsWith(".jar"))) {
+				ModpackReport report = create(currentPath).analyze(jars.collect(Collectors.toList()));
+				report.write(Files.createDirectories(currentPath.resolve("output")).resolve("patchwork-analysis.json"));
+			}
+
+			return;
+		}
+
+		if (workers > 0) {
+			// Each worker process loads the mappings itself
+			Path inputDir = Files.createDirectories(currentPath.resolve("input"));
 
-		IMappingProvider intermediary = TinyUtils.createTinyMappingProvider(currentPath.resolve("data/mappings/intermediary-" + version + ".tiny"), "official", "intermediary");
+			try (Stream<Path> jars = Files.walk(inputDir).filter(file -> file.toString().endsWith(".jar"))) {
+				ShardReport report = new ShardCoordinator(currentPath, workers).run(jars.collect(Collectors.toList()));
+				report.write(Files.createDirectories(currentPath.resolve("output")).resolve("patchwork-report.json"));
+			}
+
+			return;
+		}
+
+		create(currentPath).patchAndFinish();
+	}
+
+	/**
+	 * Creates a Patchwork instance for the input, output and data folders in a directory, the way the command line
+	 * uses them. The tsrg and intermediary mappings are put into the data folder by hand, and the mappings made from
+	 * them are kept in its {@link ArtifactStore}, so they are only made again when the mappings they came from change.
+	 */
+	public static Patchwork create(Path currentPath) throws IOException {
+		ArtifactStore store = ArtifactStore.open(currentPath.resolve("data"));
+		String intermediaryName = "mappings/intermediary-" + version + ".tiny";
+		String tsrgName = "mappings/voldemap-" + version + ".tsrg";
+		List<String> mappingSources = Arrays.asList(tsrgName, intermediaryName);
+
+		Path tsrg = store.track(tsrgName, version);
+		List<TsrgClass<RawMapping>> classes;
+
+		try (InputStream stream = Files.newInputStream(tsrg)) {
+			classes = Tsrg.readMappings(stream);
+		}
+
+		IMappingProvider intermediary = TinyUtils.createTinyMappingProvider(store.track(intermediaryName, version), "official", "intermediary");
 		TsrgMappings mappings = new TsrgMappings(classes, intermediary);
 
-		if (!voldemapTiny.exists()) {
+		store.get("mappings/voldemap-" + version + ".tiny", version, mappingSources, output -> {
 			TinyWriter tinyWriter = new TinyWriter("official", "srg");
 			mappings.load(tinyWriter);
-			String tiny = tinyWriter.toString();
-			Files.write(voldemapTiny.toPath(), tiny.getBytes(StandardCharsets.UTF_8));
-		}
+			Files.write(output, tinyWriter.toString().getBytes(StandardCharsets.UTF_8));
+		});
 
-		File voldemapBridged = new File(current, "data/mappings/voldemap-bridged-" + version + ".tiny");
-		IMappingProvider bridged;
-		IMappingProvider bridgedInverted;
-
-		if (!voldemapBridged.exists()) {
+		Path voldemapBridged = store.get("mappings/voldemap-bridged-" + version + ".tiny", version, mappingSources, output -> {
 			LOGGER.trace("Generating bridged (srg -> intermediary) tiny mappings");
 
 			TinyWriter tinyWriter = new TinyWriter("srg", "intermediary");
-			bridged = new BridgedMappings(mappings, intermediary);
-			bridged.load(tinyWriter);
-			Files.write(voldemapBridged.toPath(), tinyWriter.toString().getBytes(StandardCharsets.UTF_8));
-		} else {
-			LOGGER.trace("Using cached bridged (srg -> intermediary) tiny mappings");
-			bridged = TinyUtils.createTinyMappingProvider(voldemapBridged.toPath(), "srg", "intermediary");
-		}
+			new BridgedMappings(mappings, intermediary).load(tinyWriter);
+			Files.write(output, tinyWriter.toString().getBytes(StandardCharsets.UTF_8));
+		});
 
-		bridgedInverted = TinyUtils.createTinyMappingProvider(voldemapBridged.toPath(), "intermediary", "srg");
+		IMappingProvider bridged = TinyUtils.createTinyMappingProvider(voldemapBridged, "srg", "intermediary");
+		IMappingProvider bridgedInverted = TinyUtils.createTinyMappingProvider(voldemapBridged, "intermediary", "srg");
 
 		Path inputDir = Files.createDirectories(currentPath.resolve("input"));
 		Path outputDir = Files.createDirectories(currentPath.resolve("output"));
 		Path tempDir = Files.createTempDirectory(new File(System.getProperty("java.io.tmpdir")).toPath(), "patchwork-patcher-cli");
-		new Patchwork(inputDir, outputDir, currentPath.resolve("data/"), tempDir, bridged, bridgedInverted, Collections.emptyList()).patchAndFinish();
+		return new Patchwork(inputDir, outputDir, currentPath.resolve("data/"), tempDir, bridged, bridgedInverted, Collections.emptyList());
 	}
 }
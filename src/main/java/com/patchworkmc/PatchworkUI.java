@@ -6,18 +6,16 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Toolkit;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.Permission;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -55,13 +53,16 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import net.fabricmc.tinyremapper.IMappingProvider;
 import net.fabricmc.tinyremapper.TinyUtils;
 
+import com.patchworkmc.data.ArtifactFetcher;
+import com.patchworkmc.data.ArtifactStore;
+import com.patchworkmc.jar.ClasspathStub;
+import com.patchworkmc.jar.OutputMode;
 import com.patchworkmc.mapping.BridgedMappings;
 import com.patchworkmc.mapping.RawMapping;
 import com.patchworkmc.mapping.TinyWriter;
@@ -81,6 +82,7 @@ public class PatchworkUI {
 	private static JCheckBox generateDevJar;
 	private static JCheckBox ignoreSidedAnnotations;
 	private static JComboBox<YarnBuild> yarnVersions;
+	private static JComboBox<OutputMode> outputMode;
 	private static File root = new File(System.getProperty("user.dir"));
 	private static ExecutorService service = Executors.newScheduledThreadPool(4);
 	private static PrintStream oldOut;
@@ -294,6 +296,16 @@ public class PatchworkUI {
 				pane.add(yarnPanel);
 			}
 
+			{
+				outputMode = new JComboBox<>(OutputMode.values());
+				outputMode.setSelectedItem(OutputMode.fromProperties());
+				JPanel outputModePanel = new JPanel(new BorderLayout());
+				outputModePanel.add(new JLabel("Output Mode:  "), BorderLayout.WEST);
+				outputModePanel.add(outputMode, BorderLayout.CENTER);
+				outputModePanel.setBorder(new EmptyBorder(0, 0, 10, 0));
+				pane.add(outputModePanel);
+			}
+
 			JPanel jPanel = new JPanel(new BorderLayout());
 
 			{
@@ -363,7 +375,7 @@ public class PatchworkUI {
 
 	private static void updateYarnVersions() throws IOException {
 		Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-		List<YarnBuild> builds = gson.fromJson(new InputStreamReader(new URL("https://meta.fabricmc.net/v2/versions/yarn").openStream()), new TypeToken<List<YarnBuild>>() {
+		List<YarnBuild> builds = gson.fromJson(new InputStreamReader(ArtifactFetcher.openStream(new URL("https://meta.fabricmc.net/v2/versions/yarn"))), new TypeToken<List<YarnBuild>>() {
 		}.getType());
 		SwingUtilities.invokeLater(() -> {
 			yarnVersions.removeAllItems();
@@ -413,127 +425,143 @@ public class PatchworkUI {
 
 	private static void startPatching() throws IOException {
 		System.setProperty("patchwork:ignore_sided_annotations", ignoreSidedAnnotations.isSelected() + "");
+		System.setProperty("patchwork:output_mode", outputMode.getSelectedItem().toString());
 		Path rootPath = root.toPath();
 		String version = (String) versions.getSelectedItem();
 		YarnBuild yarnBuild = PatchworkUI.generateDevJar.isSelected() ? (YarnBuild) yarnVersions.getSelectedItem() : null;
+		ArtifactStore store = ArtifactStore.open(rootPath.resolve("data"));
 
-		LOGGER.info("Checking whether intermediary for %s exists...", version);
-		loadOrDownloadIntermediary(version, new File(root, "data/mappings"));
-
-		LOGGER.info("Checking whether MCPConfig for %s exists...", version);
-		File voldemapTiny = new File(root, "data/mappings/voldemap-" + version + ".tiny");
-		List<TsrgClass<RawMapping>> classes = Tsrg.readMappings(loadOrDownloadMCPConfig(version, new File(root, "data/mappings")));
-		System.out.println("Creating tiny mappings provider...");
-		IMappingProvider intermediary = TinyUtils.createTinyMappingProvider(rootPath.resolve("data/mappings/intermediary-" + version + ".tiny"), "official", "intermediary");
-
-		System.out.println("Creating tsrg mappings...");
-		TsrgMappings mappings = new TsrgMappings(classes, intermediary);
-
-		File voldemapBridged = new File(root, "data/mappings/voldemap-bridged-" + version + ".tiny");
+		String intermediaryName = "mappings/intermediary-" + version + ".tiny";
+		String tsrgName = "mappings/voldemap-" + version + ".tsrg";
+		String voldemapTinyName = "mappings/voldemap-" + version + ".tiny";
+		String bridgedName = "mappings/voldemap-bridged-" + version + ".tiny";
+		String yarnName = yarnBuild != null ? "mappings/yarn-" + yarnBuild.version + "-v2.tiny" : null;
+		String officialJarName = version + "-client+official.jar";
+		String srgJarName = version + "-client+srg.jar";
+		String intermediaryJarName = version + "-client+intermediary.jar";
 
 		IMappingProvider bridged;
 		IMappingProvider bridgedInverted;
+		IMappingProvider yarnMappings = null;
 
-		if (!voldemapBridged.exists()) {
-			System.out.println("Generating bridged (srg -> intermediary) tiny mappings...");
+		try (ArtifactFetcher fetcher = ArtifactFetcher.create(rootPath.resolve("data"))) {
+			ArtifactFetcher.Download intermediaryDownload = () -> fetcher.downloadMaven(new URL("https://maven.fabricmc.net/net/fabricmc/intermediary/" + version + "/intermediary-" + version + ".jar"));
+			ArtifactFetcher.Download mcpConfigDownload = () -> fetcher.downloadMaven(new URL("http://files.minecraftforge.net/maven/de/oceanlabs/mcp/mcp_config/" + version + "/mcp_config-" + version + ".zip"));
+			ArtifactFetcher.Download yarnDownload = () -> fetcher.downloadMaven(new URL("https://maven.fabricmc.net/" + yarnBuild.maven.replace(yarnBuild.version, "").replace('.', '/').replace(':', '/') + yarnBuild.version + "/" + "yarn-" + yarnBuild.version + "-v2.jar"));
+			ArtifactFetcher.Download clientJarDownload = () -> {
+				JsonObject client = getClientJarDownload(version);
 
-			TinyWriter tinyWriter = new TinyWriter("srg", "intermediary");
-			bridged = new BridgedMappings(mappings, intermediary);
-			bridged.load(tinyWriter);
-			Files.write(voldemapBridged.toPath(), tinyWriter.toString().getBytes(StandardCharsets.UTF_8));
+				return fetcher.download(new URL(client.get("url").getAsString()), client.get("sha1").getAsString());
+			};
 
-			System.out.println("Using generated bridged (srg -> intermediary) tiny mappings");
-		} else {
-			System.out.println("Using cached bridged (srg -> intermediary) tiny mappings");
-			bridged = TinyUtils.createTinyMappingProvider(voldemapBridged.toPath(), "srg", "intermediary");
-		}
+			// Start every download that is missing up front, so that they run at the same time
+			prefetchIfMissing(store, fetcher, intermediaryName, intermediaryDownload);
+			prefetchIfMissing(store, fetcher, tsrgName, mcpConfigDownload);
+			prefetchIfMissing(store, fetcher, officialJarName, clientJarDownload);
 
-		bridgedInverted = TinyUtils.createTinyMappingProvider(voldemapBridged.toPath(), "intermediary", "srg");
+			if (yarnBuild != null) {
+				prefetchIfMissing(store, fetcher, yarnName, yarnDownload);
+			}
 
-		if (yarnBuild != null) {
-			LOGGER.info("Checking whether yarn for %s exists...", yarnBuild.toString());
-			downloadYarn(yarnBuild, new File(root, "data/mappings"));
-		}
+			LOGGER.info("Checking whether intermediary for %s exists...", version);
+			Path intermediaryTiny = store.get(intermediaryName, version, output -> {
+				LOGGER.info("Downloading Intermediary for %s.", version);
+				extract(fetcher.fetch(intermediaryName, intermediaryDownload), "/mappings.tiny", output);
+			});
 
-		if (generateMCPTiny.isSelected()) {
-			LOGGER.info("Generating tiny MCP.");
+			LOGGER.info("Checking whether MCPConfig for %s exists...", version);
+			Path tsrg = store.get(tsrgName, version, output -> {
+				LOGGER.info("Downloading MCPConfig for %s.", version);
+				extract(fetcher.fetch(tsrgName, mcpConfigDownload), "/joined.tsrg", output);
+			});
+
+			List<TsrgClass<RawMapping>> classes;
 
-			if (voldemapTiny.exists()) {
-				LOGGER.info("Tiny MCP already exists. deleting existing tiny file.");
-				Files.delete(voldemapTiny.toPath());
+			try (InputStream stream = Files.newInputStream(tsrg)) {
+				classes = Tsrg.readMappings(stream);
 			}
 
-			LOGGER.info("Generating tiny MCP from tsrg data.");
-			TinyWriter tinyWriter = new TinyWriter("official", "srg");
-			mappings.load(tinyWriter);
-			String tiny = tinyWriter.toString();
-			Files.write(voldemapTiny.toPath(), tiny.getBytes(StandardCharsets.UTF_8));
-			LOGGER.info("Generated tiny MCP.");
-		}
+			System.out.println("Creating tiny mappings provider...");
+			IMappingProvider intermediary = TinyUtils.createTinyMappingProvider(intermediaryTiny, "official", "intermediary");
 
-		Files.createDirectories(rootPath.resolve("input"));
-		Files.createDirectories(rootPath.resolve("temp"));
-		Files.createDirectories(rootPath.resolve("output"));
+			System.out.println("Creating tsrg mappings...");
+			TsrgMappings mappings = new TsrgMappings(classes, intermediary);
+			List<String> mappingSources = Arrays.asList(tsrgName, intermediaryName);
 
-		Path officialJar = rootPath.resolve("data/" + version + "-client+official.jar");
-		Path srgJar = rootPath.resolve("data/" + version + "-client+srg.jar");
+			// The bridged mappings are only made again if the tsrg or intermediary mappings they came from changed
+			Path voldemapBridged = store.get(bridgedName, version, mappingSources, output -> {
+				System.out.println("Generating bridged (srg -> intermediary) tiny mappings...");
 
-		IMappingProvider[] yarnMappings = {null};
+				TinyWriter tinyWriter = new TinyWriter("srg", "intermediary");
+				new BridgedMappings(mappings, intermediary).load(tinyWriter);
+				Files.write(output, tinyWriter.toString().getBytes(StandardCharsets.UTF_8));
+			});
 
-		{
-			if (!officialJar.toFile().exists()) {
-				LOGGER.info("Trying to download Minecraft " + version + " client jar.");
-				Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-				JsonArray versions = gson.fromJson(new InputStreamReader(new URL("https://launchermeta.mojang.com/mc/game/version_manifest.json").openStream()), JsonObject.class).get("versions").getAsJsonArray();
-				Files.deleteIfExists(srgJar);
-
-				for (JsonElement jsonElement : versions) {
-					if (jsonElement.isJsonObject()) {
-						JsonObject object = jsonElement.getAsJsonObject();
-						String id = object.get("id").getAsJsonPrimitive().getAsString();
-
-						if (id.equals(version)) {
-							String versionUrl = object.get("url").getAsJsonPrimitive().getAsString();
-							JsonObject versionMeta = gson.fromJson(new InputStreamReader(new URL(versionUrl).openStream()), JsonObject.class);
-							String versionJarUrl = versionMeta.get("downloads").getAsJsonObject().get("client").getAsJsonObject().get("url").getAsJsonPrimitive().getAsString();
-							LOGGER.info("Downloading Minecraft client " + version + ".");
-							FileUtils.copyURLToFile(new URL(versionJarUrl), officialJar.toFile());
-							LOGGER.info("Downloaded Minecraft client " + version + ".");
-							break;
-						}
-					}
-				}
+			bridged = TinyUtils.createTinyMappingProvider(voldemapBridged, "srg", "intermediary");
+			bridgedInverted = TinyUtils.createTinyMappingProvider(voldemapBridged, "intermediary", "srg");
 
-				if (!officialJar.toFile().exists()) {
-					throw new IllegalStateException("Failed to find Minecraft version " + version);
-				}
-			} else {
-				LOGGER.info("Minecraft jar already exists for Minecraft " + version + ".");
+			if (yarnBuild != null) {
+				LOGGER.info("Checking whether yarn for %s exists...", yarnBuild.toString());
+				store.get(yarnName, version, output -> {
+					LOGGER.info("Downloading Yarn for %s.", yarnBuild.version);
+					extract(fetcher.fetch(yarnName, yarnDownload), "/mappings.tiny", output);
+				});
 			}
 
-			if (!srgJar.toFile().exists()) {
-				LOGGER.info("Remapping Minecraft (official -> srg)");
-				Patchwork.remap(mappings, officialJar, srgJar);
+			if (generateMCPTiny.isSelected()) {
+				LOGGER.info("Generating tiny MCP from tsrg data.");
+				store.invalidate(voldemapTinyName);
+				store.get(voldemapTinyName, version, mappingSources, output -> {
+					TinyWriter tinyWriter = new TinyWriter("official", "srg");
+					mappings.load(tinyWriter);
+					Files.write(output, tinyWriter.toString().getBytes(StandardCharsets.UTF_8));
+				});
+				LOGGER.info("Generated tiny MCP.");
 			}
 
+			Files.createDirectories(rootPath.resolve("input"));
+			Files.createDirectories(rootPath.resolve("temp"));
+			Files.createDirectories(rootPath.resolve("output"));
+
+			// A client jar that is not in the store yet is only adopted if it matches the one Mojang publishes
+			Path existingJar = rootPath.resolve("data").resolve(officialJarName);
+			String officialSha1 = !store.contains(officialJarName) && Files.exists(existingJar) ? getClientJarDownload(version).get("sha1").getAsString() : null;
+
+			Path officialJar = store.get(officialJarName, version, Collections.emptyList(), officialSha1, output -> {
+				LOGGER.info("Trying to download Minecraft " + version + " client jar.");
+				Files.copy(fetcher.fetch(officialJarName, clientJarDownload), output);
+				LOGGER.info("Downloaded Minecraft client " + version + ".");
+			});
+
+			Path srgJar = store.get(srgJarName, version, Arrays.asList(officialJarName, tsrgName, intermediaryName), output -> {
+				LOGGER.info("Remapping Minecraft (official -> srg)");
+				Patchwork.remap(mappings, officialJar, output);
+			});
+
+			// The remapper only needs the signatures of the classes on its classpath
+			store.get(rootPath.resolve("data").relativize(ClasspathStub.getStubPath(srgJar)).toString(), version, Collections.singletonList(srgJarName), output -> ClasspathStub.write(srgJar, output));
+
 			if (yarnBuild != null) {
-				Path intermediaryJar = rootPath.resolve("data/" + version + "-client+intermediary.jar");
-				yarnMappings[0] = TinyUtils.createTinyMappingProvider(rootPath.resolve("data/mappings/yarn-" + yarnBuild.version + "-v2.tiny"), "intermediary", "named");
+				yarnMappings = TinyUtils.createTinyMappingProvider(rootPath.resolve("data").resolve(yarnName), "intermediary", "named");
 
-				if (!intermediaryJar.toFile().exists()) {
+				Path intermediaryJar = store.get(intermediaryJarName, version, Arrays.asList(officialJarName, intermediaryName), output -> {
 					LOGGER.info("Remapping Minecraft (official -> intermediary)");
-					Patchwork.remap(intermediary, officialJar, intermediaryJar);
-				}
+					Patchwork.remap(intermediary, officialJar, output);
+				});
+
+				store.get(rootPath.resolve("data").relativize(ClasspathStub.getStubPath(intermediaryJar)).toString(), version, Collections.singletonList(intermediaryJarName), output -> ClasspathStub.write(intermediaryJar, output));
 			}
 		}
 
+		store.evict(version);
+
 		LOGGER.info("Preparation Complete!\n");
 
 		Path inputFolder = new File(modsFolder.getText()).toPath();
 		Path outputFolder = new File(PatchworkUI.outputFolder.getText()).toPath();
 		Path dataFolder = rootPath.resolve("data");
 		Path tempFolder = Files.createTempDirectory(new File(System.getProperty("java.io.tmpdir")).toPath(), "patchwork-patcher-ui");
-		List<IMappingProvider> devMappings = generateDevJar.isSelected() ? Collections.singletonList(yarnMappings[0]) : Collections.emptyList();
+		List<IMappingProvider> devMappings = generateDevJar.isSelected() ? Collections.singletonList(yarnMappings) : Collections.emptyList();
 
 		Patchwork patchwork = new Patchwork(inputFolder, outputFolder, dataFolder, tempFolder, bridged, bridgedInverted, devMappings);
 
@@ -541,97 +569,49 @@ public class PatchworkUI {
 		LOGGER.info("Successfully patched " + patched + " mod(s)!");
 	}
 
-	private static void downloadYarn(YarnBuild yarnBuild, File parent) throws IOException {
-		parent.mkdirs();
-		File file = new File(parent, "yarn-" + yarnBuild.version + "-v2.tiny");
-
-		if (!file.exists()) {
-			LOGGER.info("Downloading Yarn for " + yarnBuild.version + ".");
-			InputStream stream = new URL("https://maven.fabricmc.net/" + yarnBuild.maven.replace(yarnBuild.version, "").replace('.', '/').replace(':', '/') + yarnBuild.version + "/" + "yarn-" + yarnBuild.version + "-v2.jar").openStream();
-			ZipInputStream zipInputStream = new ZipInputStream(stream);
-
-			while (true) {
-				ZipEntry nextEntry = zipInputStream.getNextEntry();
-
-				if (nextEntry == null) {
-					break;
-				}
-
-				if (!nextEntry.isDirectory() && nextEntry.getName().endsWith("/mappings.tiny")) {
-					FileWriter writer = new FileWriter(file, false);
-					IOUtils.copy(zipInputStream, writer, Charset.defaultCharset());
-					writer.close();
-					LOGGER.info("Downloaded Yarn for " + yarnBuild.version + ".");
-					break;
-				}
-			}
-
-			zipInputStream.close();
-		} else {
-			LOGGER.info("Yarn for " + yarnBuild.version + " already exists, using downloaded data.");
+	private static void prefetchIfMissing(ArtifactStore store, ArtifactFetcher fetcher, String name, ArtifactFetcher.Download download) throws IOException {
+		if (!store.has(name)) {
+			fetcher.prefetch(name, download);
 		}
 	}
 
-	public static InputStream loadOrDownloadMCPConfig(String version, File parent) throws IOException {
-		parent.mkdirs();
-		File file = new File(parent, "voldemap-" + version + ".tsrg");
-
-		if (!file.exists()) {
-			LOGGER.info("Downloading MCPConfig for " + version + ".");
-			InputStream stream = new URL("http://files.minecraftforge.net/maven/de/oceanlabs/mcp/mcp_config/" + version + "/mcp_config-" + version + ".zip").openStream();
-			ZipInputStream zipInputStream = new ZipInputStream(stream);
-
-			while (true) {
-				ZipEntry nextEntry = zipInputStream.getNextEntry();
+	/**
+	 * @return the url and sha1 of the client jar of a Minecraft version
+	 */
+	private static JsonObject getClientJarDownload(String version) throws IOException {
+		Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+		JsonArray versions = gson.fromJson(new InputStreamReader(ArtifactFetcher.openStream(new URL("https://launchermeta.mojang.com/mc/game/version_manifest.json"))), JsonObject.class).get("versions").getAsJsonArray();
 
-				if (nextEntry == null) {
-					break;
-				}
+		for (JsonElement jsonElement : versions) {
+			if (jsonElement.isJsonObject()) {
+				JsonObject object = jsonElement.getAsJsonObject();
+				String id = object.get("id").getAsJsonPrimitive().getAsString();
 
-				if (!nextEntry.isDirectory() && nextEntry.getName().endsWith("/joined.tsrg")) {
-					FileWriter writer = new FileWriter(file, false);
-					IOUtils.copy(zipInputStream, writer, Charset.defaultCharset());
-					writer.close();
-					LOGGER.info("Downloaded MCPConfig for " + version + ".");
-					break;
+				if (id.equals(version)) {
+					String versionUrl = object.get("url").getAsJsonPrimitive().getAsString();
+					JsonObject versionMeta = gson.fromJson(new InputStreamReader(ArtifactFetcher.openStream(new URL(versionUrl))), JsonObject.class);
+					return versionMeta.get("downloads").getAsJsonObject().get("client").getAsJsonObject();
 				}
 			}
-		} else {
-			LOGGER.info("MCPConfig for " + version + " already exists, using downloaded data.");
 		}
 
-		return new FileInputStream(file);
+		throw new IllegalStateException("Failed to find Minecraft version " + version);
 	}
 
-	public static InputStream loadOrDownloadIntermediary(String version, File parent) throws IOException {
-		parent.mkdirs();
-		File file = new File(parent, "intermediary-" + version + ".tiny");
-
-		if (!file.exists()) {
-			LOGGER.info("Downloading Intermediary for " + version + ".");
-			InputStream stream = new URL("https://maven.fabricmc.net/net/fabricmc/intermediary/" + version + "/intermediary-" + version + ".jar").openStream();
-			ZipInputStream zipInputStream = new ZipInputStream(stream);
-
-			while (true) {
-				ZipEntry nextEntry = zipInputStream.getNextEntry();
-
-				if (nextEntry == null) {
-					break;
-				}
-
-				if (!nextEntry.isDirectory() && nextEntry.getName().endsWith("/mappings.tiny")) {
-					FileWriter writer = new FileWriter(file, false);
-					IOUtils.copy(zipInputStream, writer, Charset.defaultCharset());
-					writer.close();
-					LOGGER.info("Downloaded intermediary for " + version + ".");
-					break;
+	/**
+	 * Extracts the first file in a zip whose path ends with the given suffix.
+	 */
+	private static void extract(Path zip, String suffix, Path output) throws IOException {
+		try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zip))) {
+			for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+				if (!entry.isDirectory() && entry.getName().endsWith(suffix)) {
+					Files.copy(zipInputStream, output);
+					return;
 				}
 			}
-		} else {
-			LOGGER.info("Intermediary for " + version + " already exists, using downloaded data.");
 		}
 
-		return new FileInputStream(file);
+		throw new IOException("Found no file ending with " + suffix + " in " + zip.getFileName());
 	}
 
 	@SuppressWarnings("unused")
@@ -1,8 +1,11 @@
 package com.patchworkmc;
 
+import java.util.ArrayDeque;
+
 import javax.swing.SwingUtilities;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
+import javax.swing.text.Element;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Filter;
@@ -20,6 +23,9 @@ import org.apache.logging.log4j.core.layout.JsonLayout;
 public class UIAppender extends AbstractAppender {
 	private static ColorPane pane;
 	private final int maxLines;
+	// Messages waiting to be appended to the pane, bounded to the most recent maxLines
+	private final ArrayDeque<String> pending = new ArrayDeque<>();
+	private boolean flushScheduled;
 
 	private UIAppender(String name, Layout<?> layout, Filter filter, int maxLines, boolean ignoreExceptions) {
 		super(name, filter, layout, ignoreExceptions, Property.EMPTY_ARRAY);
@@ -54,34 +60,63 @@ public class UIAppender extends AbstractAppender {
 		}
 
 		String message = new String(this.getLayout().toByteArray(event));
+		boolean schedule;
+
+		synchronized (pending) {
+			pending.addLast(message);
+
+			// Anything beyond the line limit would be trimmed from the pane right away, so don't hold on to it
+			if (maxLines > 0 && pending.size() > maxLines) {
+				pending.removeFirst();
+			}
 
-		try {
-			SwingUtilities.invokeLater(() -> {
-				try {
-					pane.appendANSI(message);
-					Document document = pane.getDocument();
-					String text = document.getText(0, document.getLength());
-					int lines = text.split("\n").length;
-
-					if (maxLines > 0 && lines > maxLines) {
-						document.remove(0, ordinalIndexOf(text, "\n", lines - maxLines));
-					}
-				} catch (BadLocationException ex) {
-					LOGGER.throwing(Level.FATAL, ex);
-				}
-			});
-		} catch (IllegalStateException ex) {
-			LOGGER.throwing(Level.FATAL, ex);
+			schedule = !flushScheduled;
+			flushScheduled = true;
+		}
+
+		if (schedule) {
+			try {
+				SwingUtilities.invokeLater(this::flush);
+			} catch (IllegalStateException ex) {
+				LOGGER.throwing(Level.FATAL, ex);
+			}
 		}
 	}
 
-	private static int ordinalIndexOf(String str, String substr, int n) {
-		int pos = str.indexOf(substr);
+	/**
+	 * Appends every pending message to the pane at once, then trims the oldest lines. Called on the event dispatch
+	 * thread, at most once for however many messages were logged since the last flush.
+	 */
+	private void flush() {
+		StringBuilder batch = new StringBuilder();
+
+		synchronized (pending) {
+			for (String message : pending) {
+				batch.append(message);
+			}
 
-		while (--n > 0 && pos != -1) {
-			pos = str.indexOf(substr, pos + 1);
+			pending.clear();
+			flushScheduled = false;
 		}
 
-		return pos;
+		pane.appendANSI(batch.toString());
+
+		if (maxLines <= 0) {
+			return;
+		}
+
+		// Each line of the document is an element of the root element, so lines can be found without reading the text
+		Document document = pane.getDocument();
+		Element root = document.getDefaultRootElement();
+		// The text ends with a line break, which is followed by an empty line
+		int excess = root.getElementCount() - 1 - maxLines;
+
+		if (excess > 0) {
+			try {
+				document.remove(0, root.getElement(excess - 1).getEndOffset());
+			} catch (BadLocationException ex) {
+				LOGGER.throwing(Level.FATAL, ex);
+			}
+		}
 	}
 }
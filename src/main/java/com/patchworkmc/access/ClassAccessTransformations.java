@@ -1,5 +1,8 @@
 package com.patchworkmc.access;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -45,6 +48,13 @@ public class ClassAccessTransformations {
 		methodTransformers.computeIfAbsent(method, n -> new HashMap<>()).put(descriptor, transformation);
 	}
 
+	/**
+	 * @return true if applying these transformations would not change any access flags
+	 */
+	public boolean isEmpty() {
+		return classTransformer.equals(AccessTransformation.NONE) && fieldTransformers.isEmpty() && methodTransformers.isEmpty();
+	}
+
 	public AccessTransformation getClassTransformation() {
 		return classTransformer;
 	}
@@ -70,4 +80,65 @@ public class ClassAccessTransformations {
 
 		return AccessTransformation.NONE;
 	}
+
+	/**
+	 * Writes the transformations in a binary form that can be read back with {@link #read(DataInput)}.
+	 */
+	public void write(DataOutput output) throws IOException {
+		writeTransformation(output, classTransformer);
+		output.writeInt(fieldTransformers.size());
+
+		for (Map.Entry<String, AccessTransformation> entry : fieldTransformers.entrySet()) {
+			output.writeUTF(entry.getKey());
+			writeTransformation(output, entry.getValue());
+		}
+
+		output.writeInt(methodTransformers.size());
+
+		for (Map.Entry<String, Map<String, AccessTransformation>> method : methodTransformers.entrySet()) {
+			output.writeUTF(method.getKey());
+			output.writeInt(method.getValue().size());
+
+			for (Map.Entry<String, AccessTransformation> entry : method.getValue().entrySet()) {
+				output.writeUTF(entry.getKey());
+				writeTransformation(output, entry.getValue());
+			}
+		}
+	}
+
+	public static ClassAccessTransformations read(DataInput input) throws IOException {
+		ClassAccessTransformations transformations = new ClassAccessTransformations();
+		transformations.classTransformer = readTransformation(input);
+
+		int fields = input.readInt();
+
+		for (int i = 0; i < fields; i++) {
+			transformations.fieldTransformers.put(input.readUTF(), readTransformation(input));
+		}
+
+		int methods = input.readInt();
+
+		for (int i = 0; i < methods; i++) {
+			String method = input.readUTF();
+			int descriptors = input.readInt();
+			Map<String, AccessTransformation> transformationSet = new HashMap<>();
+
+			for (int j = 0; j < descriptors; j++) {
+				transformationSet.put(input.readUTF(), readTransformation(input));
+			}
+
+			transformations.methodTransformers.put(method, transformationSet);
+		}
+
+		return transformations;
+	}
+
+	private static void writeTransformation(DataOutput output, AccessTransformation transformation) throws IOException {
+		output.writeInt(transformation.getRemoved());
+		output.writeInt(transformation.getAdded());
+	}
+
+	private static AccessTransformation readTransformation(DataInput input) throws IOException {
+		return new AccessTransformation(input.readInt(), input.readInt());
+	}
 }
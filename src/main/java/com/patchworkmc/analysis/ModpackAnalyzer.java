@@ -0,0 +1,172 @@
+package com.patchworkmc.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.patchworkmc.Diagnostics;
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.annotation.AnnotationProcessor;
+import com.patchworkmc.annotation.AnnotationStorage;
+import com.patchworkmc.event.EventHandlerScanner;
+import com.patchworkmc.mapping.remapper.AmbiguousMappingException;
+import com.patchworkmc.mapping.remapper.PatchworkRemapper;
+import com.patchworkmc.objectholder.ObjectHolderScanner;
+import com.patchworkmc.patch.RedirectTable;
+import com.patchworkmc.transformer.ConstantPoolScanner;
+import com.patchworkmc.transformer.ConstantPoolScanner.Stage;
+
+/**
+ * Profiles the mod jars of a pack without patching them, to show what Patchwork will have to do for each mod before
+ * anything is remapped or written.
+ *
+ * <p>Each class is first checked with the {@link ConstantPoolScanner}, and its constant pool is walked for the
+ * Minecraft classes it references and the strings it holds. Only classes whose constant pool names an annotation are
+ * then visited by the same scanners the patcher uses, with method bodies skipped. Jars and the classes in them are
+ * analyzed in parallel.</p>
+ */
+public class ModpackAnalyzer {
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+
+	private static final String EXTENSIBLE_ENUM = "net/minecraftforge/common/IExtensibleEnum";
+	private static final String ACCESS_TRANSFORMER = "META-INF/accesstransformer.cfg";
+	private static final String NESTED_JARS = "META-INF/jars/";
+
+	private final PatchworkRemapper.Naive remapper;
+	private final Set<String> redirectOwners;
+
+	/**
+	 * @param remapper maps the srg names in the jars to intermediary
+	 */
+	public ModpackAnalyzer(PatchworkRemapper.Naive remapper) {
+		this.remapper = remapper;
+		this.redirectOwners = RedirectTable.forVersion(Patchwork.getMinecraftVersion()).getOwners();
+	}
+
+	public ModpackReport analyze(List<Path> jars) {
+		long start = System.nanoTime();
+
+		Patchwork.LOGGER.info("Analyzing %s jars", jars.size());
+
+		List<ModpackReport.Mod> mods = jars.parallelStream().map(this::analyzeJar).collect(Collectors.toList());
+		ModpackReport report = new ModpackReport(mods, (System.nanoTime() - start) / 1_000_000);
+		report.log();
+
+		return report;
+	}
+
+	private ModpackReport.Mod analyzeJar(Path jar) {
+		ModpackReport.Mod mod = new ModpackReport.Mod(jar.getFileName().toString());
+		long start = System.nanoTime();
+
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			List<byte[]> classes = new ArrayList<>();
+
+			for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName();
+
+				if (name.endsWith(".class")) {
+					try (InputStream stream = zip.getInputStream(entry)) {
+						classes.add(IOUtils.toByteArray(stream));
+					}
+				} else if (name.equals(ACCESS_TRANSFORMER)) {
+					mod.setAccessTransformerEntries(countAccessTransformerEntries(zip, entry));
+				} else if (name.startsWith(NESTED_JARS) && name.endsWith(".jar")) {
+					mod.addNestedJar();
+				}
+			}
+
+			AnnotationStorage annotations = new AnnotationStorage();
+			Diagnostics diagnostics = new Diagnostics();
+
+			classes.parallelStream().forEach(content -> analyzeClass(content, mod, annotations, diagnostics));
+		} catch (IOException | RuntimeException ex) {
+			mod.setError(ex.toString());
+		}
+
+		mod.setMillis((System.nanoTime() - start) / 1_000_000);
+
+		return mod;
+	}
+
+	private void analyzeClass(byte[] content, ModpackReport.Mod mod, AnnotationStorage annotations, Diagnostics diagnostics) {
+		ClassReader reader = new ClassReader(content);
+		EnumSet<Stage> stages = ConstantPoolScanner.scan(content, reader, remapper);
+		String className = reader.getClassName();
+		char[] buffer = new char[reader.getMaxStringLength()];
+		boolean redirected = false;
+
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+
+			// The second slot of a long or a double has no entry.
+			if (offset == 0) {
+				continue;
+			}
+
+			int tag = content[offset - 1];
+
+			if (tag == CONSTANT_CLASS) {
+				String owner = reader.readUTF8(offset, buffer);
+
+				// Redirects are keyed by intermediary names, but the classes are still in srg
+				if (redirectOwners.contains(remapper.getClass(owner))) {
+					mod.addRedirect(owner);
+					redirected = true;
+				} else if (owner.equals(EXTENSIBLE_ENUM)) {
+					mod.addExtensibleEnum(className);
+				}
+			} else if (tag == CONSTANT_STRING) {
+				String value = reader.readUTF8(offset, buffer);
+
+				if (value.startsWith("func_")) {
+					try {
+						remapper.getMethod(value);
+					} catch (AmbiguousMappingException ex) {
+						mod.addAmbiguousString(value);
+					}
+				}
+			}
+		}
+
+		EnumSet<Stage> scanned = EnumSet.of(Stage.ANNOTATIONS, Stage.OBJECT_HOLDERS, Stage.EVENT_HANDLERS);
+		scanned.retainAll(stages);
+
+		if (!scanned.isEmpty()) {
+			// Nothing is written, so the scanners are chained in front of a visitor that drops everything
+			ClassVisitor visitor = new ClassVisitor(Opcodes.ASM7) { };
+
+			visitor = new EventHandlerScanner(visitor, subscriber -> mod.addEventBusSubscriber(), subscribeEvent -> mod.addSubscribeEvent());
+			visitor = new ObjectHolderScanner(visitor, holder -> mod.addObjectHolder());
+			visitor = new AnnotationProcessor(visitor, mod::addModId, annotations, diagnostics);
+
+			reader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		}
+
+		mod.addClass(content.length, !stages.isEmpty() || redirected);
+	}
+
+	private static int countAccessTransformerEntries(ZipFile zip, ZipEntry entry) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+			return (int) reader.lines().map(line -> line.split("#", 2)[0].trim()).filter(line -> !line.isEmpty()).count();
+		}
+	}
+}
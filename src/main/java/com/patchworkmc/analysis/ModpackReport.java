@@ -0,0 +1,155 @@
+package com.patchworkmc.analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.google.gson.GsonBuilder;
+
+import com.patchworkmc.Patchwork;
+
+/**
+ * The results of a {@link ModpackAnalyzer}, with one entry per jar.
+ */
+public class ModpackReport {
+	private final List<Mod> mods;
+	private final long millis;
+
+	ModpackReport(List<Mod> mods, long millis) {
+		this.mods = new ArrayList<>(mods);
+		this.millis = millis;
+
+		// The mods with the most bytecode to patch take the longest, so they go first
+		this.mods.sort(Comparator.comparingLong((Mod mod) -> mod.patchedBytes).reversed().thenComparing(mod -> mod.jar));
+	}
+
+	public List<Mod> getMods() {
+		return mods;
+	}
+
+	void log() {
+		long classes = mods.stream().mapToLong(mod -> mod.classes).sum();
+		long patchedClasses = mods.stream().mapToLong(mod -> mod.patchedClasses).sum();
+
+		Patchwork.LOGGER.info("Analyzed %s jars in %s ms: %s of %s classes need patching", mods.size(), millis, patchedClasses, classes);
+
+		for (Mod mod : mods) {
+			if (mod.error != null) {
+				Patchwork.LOGGER.error("Failed to analyze %s: %s", mod.jar, mod.error);
+			} else if (!mod.ambiguousStrings.isEmpty()) {
+				Patchwork.LOGGER.warn("%s has %s string constants that can't be remapped: %s", mod.jar, mod.ambiguousStrings.size(), mod.ambiguousStrings);
+			}
+		}
+	}
+
+	public void write(Path path) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(this, writer);
+		}
+	}
+
+	/**
+	 * What was found in one jar. Classes of the jar are analyzed concurrently, so every method that adds to it is
+	 * synchronized.
+	 */
+	public static class Mod {
+		private final String jar;
+		private final Set<String> modIds = new TreeSet<>();
+		private String error;
+		private long millis;
+
+		private int classes;
+		private long classBytes;
+		// Classes with anything for Patchwork to change, which go through the full patching pipeline
+		private int patchedClasses;
+		private long patchedBytes;
+
+		private int objectHolders;
+		private int subscribeEvents;
+		private int eventBusSubscribers;
+		private final Set<String> extensibleEnums = new TreeSet<>();
+		// srg class name -> number of references from classes of the mod
+		private final Map<String, Integer> redirects = new TreeMap<>();
+		private int accessTransformerEntries;
+		private final Set<String> ambiguousStrings = new TreeSet<>();
+		private int nestedJars;
+
+		Mod(String jar) {
+			this.jar = jar;
+		}
+
+		public String getJar() {
+			return jar;
+		}
+
+		/**
+		 * @return why analyzing the jar failed, or null if it didn't
+		 */
+		public String getError() {
+			return error;
+		}
+
+		synchronized void addModId(String modId) {
+			modIds.add(modId);
+		}
+
+		synchronized void addClass(int size, boolean patched) {
+			classes++;
+			classBytes += size;
+
+			if (patched) {
+				patchedClasses++;
+				patchedBytes += size;
+			}
+		}
+
+		synchronized void addObjectHolder() {
+			objectHolders++;
+		}
+
+		synchronized void addSubscribeEvent() {
+			subscribeEvents++;
+		}
+
+		synchronized void addEventBusSubscriber() {
+			eventBusSubscribers++;
+		}
+
+		synchronized void addExtensibleEnum(String className) {
+			extensibleEnums.add(className);
+		}
+
+		synchronized void addRedirect(String owner) {
+			redirects.merge(owner, 1, Integer::sum);
+		}
+
+		synchronized void addAmbiguousString(String value) {
+			ambiguousStrings.add(value);
+		}
+
+		synchronized void addNestedJar() {
+			nestedJars++;
+		}
+
+		void setAccessTransformerEntries(int accessTransformerEntries) {
+			this.accessTransformerEntries = accessTransformerEntries;
+		}
+
+		void setError(String error) {
+			this.error = error;
+		}
+
+		void setMillis(long millis) {
+			this.millis = millis;
+		}
+	}
+}
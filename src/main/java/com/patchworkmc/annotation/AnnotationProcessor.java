@@ -1,25 +1,30 @@
 package com.patchworkmc.annotation;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
+import org.apache.logging.log4j.Level;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
-import com.patchworkmc.Patchwork;
+import com.patchworkmc.Diagnostics;
 
 public class AnnotationProcessor extends ClassVisitor {
 	private Consumer<String> consumer;
 	private AnnotationStorage annotationStorage;
+	private Diagnostics diagnostics;
 	private String className;
 
-	public AnnotationProcessor(ClassVisitor parent, Consumer<String> consumer, AnnotationStorage annotationStorage) {
+	public AnnotationProcessor(ClassVisitor parent, Consumer<String> consumer, AnnotationStorage annotationStorage, Diagnostics diagnostics) {
 		super(Opcodes.ASM7, parent);
 
 		this.consumer = consumer;
 		this.annotationStorage = annotationStorage;
+		this.diagnostics = diagnostics;
 	}
 
 	private static boolean isKotlinMetadata(String descriptor) {
@@ -48,7 +53,7 @@ public class AnnotationProcessor extends ClassVisitor {
 		} else if (descriptor.equals("Lmcp/MethodsReturnNonnullByDefault;")) {
 			// TODO: Rewrite this annotation to something standardized
 
-			Patchwork.LOGGER.warn("Stripping class annotation Lmcp/MethodsReturnNonnullByDefault; as it is not supported yet");
+			diagnostics.report(Level.WARN, "Stripping class annotation Lmcp/MethodsReturnNonnullByDefault; from %s as it is not supported yet", className);
 
 			return null;
 		} else if (descriptor.equals("Lscala/reflect/ScalaSignature;")) {
@@ -65,8 +70,8 @@ public class AnnotationProcessor extends ClassVisitor {
 
 			return super.visitAnnotation(descriptor, visible);
 		} else if (isForgeAnnotation(descriptor)) {
-			Patchwork.LOGGER.warn("Unknown Forge class annotation: " + descriptor);
-			return new AnnotationPrinter(super.visitAnnotation(descriptor, visible));
+			return AnnotationPrinter.create(super.visitAnnotation(descriptor, visible), diagnostics,
+					"Unknown Forge class annotation %s on %s: %s", descriptor, className, null);
 		}
 
 		return super.visitAnnotation(descriptor, visible);
@@ -75,23 +80,25 @@ public class AnnotationProcessor extends ClassVisitor {
 	@Override
 	public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
 		FieldVisitor parent = super.visitField(access, name, descriptor, signature, value);
-		return new FieldScanner(parent, annotationStorage, className, name);
+		return new FieldScanner(parent, annotationStorage, diagnostics, className, name);
 	}
 
 	@Override
 	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
 		MethodVisitor parent = super.visitMethod(access, name, descriptor, signature, exceptions);
-		return new MethodScanner(parent, annotationStorage, className, name + descriptor);
+		return new MethodScanner(parent, annotationStorage, diagnostics, className, name + descriptor);
 	}
 
 	static class FieldScanner extends FieldVisitor {
 		private AnnotationStorage annotationStorage;
+		private Diagnostics diagnostics;
 		private String outerClass;
 		private String fieldName;
 
-		FieldScanner(FieldVisitor parent, AnnotationStorage annotationStorage, String outerClass, String fieldName) {
+		FieldScanner(FieldVisitor parent, AnnotationStorage annotationStorage, Diagnostics diagnostics, String outerClass, String fieldName) {
 			super(Opcodes.ASM7, parent);
 			this.annotationStorage = annotationStorage;
+			this.diagnostics = diagnostics;
 			this.outerClass = outerClass;
 			this.fieldName = fieldName;
 		}
@@ -115,8 +122,8 @@ public class AnnotationProcessor extends ClassVisitor {
 
 				return super.visitAnnotation(descriptor, visible);
 			} else if (isForgeAnnotation(descriptor)) {
-				Patchwork.LOGGER.warn("Unknown Forge field annotation: " + descriptor);
-				return new AnnotationPrinter(super.visitAnnotation(descriptor, visible));
+				return AnnotationPrinter.create(super.visitAnnotation(descriptor, visible), diagnostics,
+						"Unknown Forge field annotation %s on %s: %s", descriptor, outerClass, fieldName);
 			}
 
 			return super.visitAnnotation(descriptor, visible);
@@ -125,12 +132,14 @@ public class AnnotationProcessor extends ClassVisitor {
 
 	static class MethodScanner extends MethodVisitor {
 		private AnnotationStorage annotationStorage;
+		private Diagnostics diagnostics;
 		private String outerClass;
 		private String method;
 
-		MethodScanner(MethodVisitor parent, AnnotationStorage annotationStorage, String outerClass, String method) {
+		MethodScanner(MethodVisitor parent, AnnotationStorage annotationStorage, Diagnostics diagnostics, String outerClass, String method) {
 			super(Opcodes.ASM7, parent);
 			this.annotationStorage = annotationStorage;
+			this.diagnostics = diagnostics;
 			this.outerClass = outerClass;
 			this.method = method;
 		}
@@ -154,24 +163,61 @@ public class AnnotationProcessor extends ClassVisitor {
 
 				return super.visitAnnotation(descriptor, visible);
 			} else if (isForgeAnnotation(descriptor)) {
-				Patchwork.LOGGER.warn("Unknown Forge method annotation: " + descriptor);
-				return new AnnotationPrinter(super.visitAnnotation(descriptor, visible));
+				return AnnotationPrinter.create(super.visitAnnotation(descriptor, visible), diagnostics,
+						"Unknown Forge method annotation %s on %s: %s", descriptor, outerClass, method);
 			}
 
 			return super.visitAnnotation(descriptor, visible);
 		}
 	}
 
+	/**
+	 * Reports an unknown annotation along with its properties once the whole annotation has been visited.
+	 */
 	static class AnnotationPrinter extends AnnotationVisitor {
-		AnnotationPrinter(AnnotationVisitor parent) {
+		private final Diagnostics diagnostics;
+		private final String format;
+		private final String descriptor;
+		private final String targetClass;
+		private final String targetMember;
+		private final List<String> properties = new ArrayList<>();
+
+		private AnnotationPrinter(AnnotationVisitor parent, Diagnostics diagnostics, String format, String descriptor, String targetClass, String targetMember) {
 			super(Opcodes.ASM7, parent);
+			this.diagnostics = diagnostics;
+			this.format = format;
+			this.descriptor = descriptor;
+			this.targetClass = targetClass;
+			this.targetMember = targetMember;
+		}
+
+		/**
+		 * @param format       the message to report, taking the descriptor, the target and the properties of the annotation
+		 * @param targetMember the field or method the annotation is on, or null if it is on the class. It is only joined
+		 *                     with the class once the message is known to be reported.
+		 */
+		static AnnotationVisitor create(AnnotationVisitor parent, Diagnostics diagnostics, String format, String descriptor, String targetClass, String targetMember) {
+			if (!diagnostics.isEnabled(Level.WARN)) {
+				return parent;
+			}
+
+			return new AnnotationPrinter(parent, diagnostics, format, descriptor, targetClass, targetMember);
 		}
 
 		@Override
 		public void visit(String name, Object value) {
 			super.visit(name, value);
 
-			Patchwork.LOGGER.warn("%s -> %s", name, value);
+			properties.add(name + " -> " + value);
+		}
+
+		@Override
+		public void visitEnd() {
+			super.visitEnd();
+
+			String target = targetMember == null ? targetClass : targetClass + "." + targetMember;
+
+			diagnostics.report(Level.WARN, format, descriptor, target, properties);
 		}
 	}
 }
@@ -1,12 +1,28 @@
 package com.patchworkmc.annotation;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.annotation.ElementType;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 
 public class AnnotationStorage {
 	public static final String relativePath = "/annotations.json";
+	/**
+	 * The version of the compact format written by {@link #writeCompact(Writer)}. The original format has no version.
+	 */
+	public static final int COMPACT_VERSION = 2;
 
 	private static class Entry {
 		public String annotationType;
@@ -22,28 +38,196 @@ public class AnnotationStorage {
 		}
 	}
 
+	// Prefixes of the annotation descriptors to keep, or empty to keep every annotation. A storage is created for every
+	// patched class, so the property is only parsed once.
+	private static final List<String> FILTER = parseFilter(System.getProperty("patchwork:annotation_filter", ""));
+
 	private ArrayList<Entry> entries = new ArrayList<>();
 
-	public AnnotationStorage() {
+	private static List<String> parseFilter(String filterProperty) {
+		return filterProperty.isEmpty() ? Collections.emptyList() : Arrays.stream(filterProperty.split(","))
+				.map(String::trim)
+				.filter(prefix -> !prefix.isEmpty())
+				.collect(Collectors.toList());
 	}
 
 	public void acceptClassAnnotation(String annotation, String targetClass) {
-		entries.add(new Entry(annotation, ElementType.TYPE, targetClass, targetClass));
+		accept(new Entry(annotation, ElementType.TYPE, targetClass, targetClass));
 	}
 
 	public void acceptFieldAnnotation(String annotation, String clazz, String field) {
-		entries.add(new Entry(annotation, ElementType.FIELD, clazz, field));
+		accept(new Entry(annotation, ElementType.FIELD, clazz, field));
 	}
 
 	public void acceptMethodAnnotation(String annotation, String clazz, String method) {
-		entries.add(new Entry(annotation, ElementType.METHOD, clazz, method));
+		accept(new Entry(annotation, ElementType.METHOD, clazz, method));
+	}
+
+	private void accept(Entry entry) {
+		if (FILTER.isEmpty() || FILTER.stream().anyMatch(entry.annotationType::startsWith)) {
+			entries.add(entry);
+		}
+	}
+
+	/**
+	 * Adds every entry of another storage to this one, for merging storages that were filled concurrently.
+	 */
+	public void addAll(AnnotationStorage other) {
+		entries.addAll(other.entries);
+	}
+
+	/**
+	 * Sorts the entries by the class they were found in. Entries from the same class keep the order they were
+	 * found in, since a class is always scanned by a single thread.
+	 */
+	public void sortByClass() {
+		entries.sort(Comparator.comparing(entry -> entry.targetInClass));
+	}
+
+	/**
+	 * Writes the entries in a binary form that can be read back with {@link #read(DataInput)}.
+	 */
+	public void write(DataOutput output) throws IOException {
+		output.writeInt(entries.size());
+
+		for (Entry entry : entries) {
+			output.writeUTF(entry.annotationType);
+			output.writeByte(entry.targetType.ordinal());
+			output.writeUTF(entry.targetInClass);
+			output.writeUTF(entry.target);
+		}
+	}
+
+	/**
+	 * Reads entries written by {@link #write(DataOutput)}. They were already filtered when first stored, so they are
+	 * not filtered again.
+	 */
+	public static AnnotationStorage read(DataInput input) throws IOException {
+		AnnotationStorage storage = new AnnotationStorage();
+		int count = input.readInt();
+		ElementType[] types = ElementType.values();
+
+		for (int i = 0; i < count; i++) {
+			String annotationType = input.readUTF();
+			ElementType targetType = types[input.readUnsignedByte()];
+			String targetInClass = input.readUTF();
+			String target = input.readUTF();
+
+			storage.entries.add(new Entry(annotationType, targetType, targetInClass, target));
+		}
+
+		return storage;
 	}
 
 	public String toJson(Gson gson) {
 		return gson.toJson(this);
 	}
 
+	/**
+	 * Writes the entries in the compact format. Every string is written once to a string table and referred to by its
+	 * index, and the entries are grouped by annotation type and then by the class they were found in:
+	 *
+	 * <pre>
+	 * {
+	 *   "version": 2,
+	 *   "strings": ["Lcom/example/Annotation;", "com/example/Target", "field", "method()V"],
+	 *   "annotations": [
+	 *     {"type": 0, "classes": [{"class": 1, "self": true, "fields": [2], "methods": [3]}]}
+	 *   ]
+	 * }
+	 * </pre>
+	 *
+	 * <p>The {@code self}, {@code fields} and {@code methods} properties are omitted when the class has no such
+	 * annotations. The output is streamed, so the whole document is never held in memory as text.</p>
+	 */
+	public void writeCompact(Writer out) throws IOException {
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		Map<Integer, Map<Integer, Targets>> grouped = new LinkedHashMap<>();
+
+		for (Entry entry : entries) {
+			int type = strings.computeIfAbsent(entry.annotationType, key -> strings.size());
+			int owner = strings.computeIfAbsent(entry.targetInClass, key -> strings.size());
+			Targets targets = grouped.computeIfAbsent(type, key -> new LinkedHashMap<>())
+					.computeIfAbsent(owner, key -> new Targets());
+
+			if (entry.targetType == ElementType.TYPE) {
+				targets.self = true;
+			} else {
+				int target = strings.computeIfAbsent(entry.target, key -> strings.size());
+
+				(entry.targetType == ElementType.FIELD ? targets.fields : targets.methods).add(target);
+			}
+		}
+
+		JsonWriter writer = new JsonWriter(out);
+
+		writer.beginObject();
+		writer.name("version").value(COMPACT_VERSION);
+
+		writer.name("strings").beginArray();
+
+		for (String string : strings.keySet()) {
+			writer.value(string);
+		}
+
+		writer.endArray();
+
+		writer.name("annotations").beginArray();
+
+		for (Map.Entry<Integer, Map<Integer, Targets>> annotation : grouped.entrySet()) {
+			writer.beginObject();
+			writer.name("type").value(annotation.getKey());
+			writer.name("classes").beginArray();
+
+			for (Map.Entry<Integer, Targets> owner : annotation.getValue().entrySet()) {
+				Targets targets = owner.getValue();
+
+				writer.beginObject();
+				writer.name("class").value(owner.getKey());
+
+				if (targets.self) {
+					writer.name("self").value(true);
+				}
+
+				writeIndices(writer, "fields", targets.fields);
+				writeIndices(writer, "methods", targets.methods);
+
+				writer.endObject();
+			}
+
+			writer.endArray();
+			writer.endObject();
+		}
+
+		writer.endArray();
+		writer.endObject();
+		writer.flush();
+	}
+
+	private static void writeIndices(JsonWriter writer, String name, List<Integer> indices) throws IOException {
+		if (indices.isEmpty()) {
+			return;
+		}
+
+		writer.name(name).beginArray();
+
+		for (int index : indices) {
+			writer.value(index);
+		}
+
+		writer.endArray();
+	}
+
 	public boolean isEmpty() {
 		return entries.isEmpty();
 	}
+
+	/**
+	 * The members of a class annotated with a single annotation type, as indices into the string table.
+	 */
+	private static class Targets {
+		private boolean self;
+		private final List<Integer> fields = new ArrayList<>();
+		private final List<Integer> methods = new ArrayList<>();
+	}
 }
@@ -0,0 +1,262 @@
+package com.patchworkmc.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.IOUtils;
+
+import com.patchworkmc.Patchwork;
+
+/**
+ * Downloads the files Patchwork needs to prepare a Minecraft version, several at a time.
+ *
+ * <p>Files are downloaded into {@code downloads} in the data folder, laid out as {@code <host>/<path>}. A download is
+ * first written to a {@code .part} file, so one that is cut short is resumed from where it stopped on the next run,
+ * if the server supports ranges. A {@code .part} file that turns out to be complete already is kept rather than
+ * downloaded again. Downloads with a known SHA-1 are checked against it, and deleted if they don't match.
+ * Finished downloads are deleted when the fetcher is closed, as the files made from them are kept in the
+ * {@link ArtifactStore}.</p>
+ *
+ * <p>The {@code patchwork:mirror} system property points every download at a mirror instead, either a local directory
+ * or the URL of a server, with the same {@code <host>/<path>} layout as the downloads folder. The number of downloads
+ * at a time is set by the {@code patchwork:download_threads} system property, 4 by default.</p>
+ */
+public class ArtifactFetcher implements Closeable {
+	private static final int TIMEOUT_MILLIS = 30_000;
+
+	private final Path directory;
+	private final ExecutorService executor;
+	private final Map<String, CompletableFuture<Path>> downloads = new ConcurrentHashMap<>();
+	private final Set<Path> finished = ConcurrentHashMap.newKeySet();
+
+	public ArtifactFetcher(Path directory, int threads) {
+		this.directory = directory;
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "Patchwork Download");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+	}
+
+	public static ArtifactFetcher create(Path dataDir) {
+		return new ArtifactFetcher(dataDir.resolve("downloads"), Integer.getInteger("patchwork:download_threads", 4));
+	}
+
+	/**
+	 * Starts a download in the background, unless one with the same key was already started.
+	 *
+	 * @param key      identifies the download, usually the name of the artifact made from it
+	 * @param download downloads the file, see {@link #download(URL, String)}
+	 */
+	public CompletableFuture<Path> prefetch(String key, Download download) {
+		return downloads.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> {
+			try {
+				return download.download();
+			} catch (IOException ex) {
+				throw new CompletionException(ex);
+			}
+		}, executor));
+	}
+
+	/**
+	 * Gets a file, waiting for it if it was prefetched, or downloading it now otherwise.
+	 */
+	public Path fetch(String key, Download download) throws IOException {
+		try {
+			return prefetch(key, download).join();
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+
+			throw ex;
+		}
+	}
+
+	/**
+	 * Downloads a file, resuming an earlier download of it that was cut short.
+	 *
+	 * @param url  where to download the file from, before it is pointed at the mirror
+	 * @param sha1 the SHA-1 of the file, or null if it is not known
+	 * @return the downloaded file
+	 */
+	public Path download(URL url, String sha1) throws IOException {
+		Path file = directory.resolve(url.getHost()).resolve(url.getPath().substring(1));
+		Path partial = file.resolveSibling(file.getFileName() + ".part");
+
+		Files.createDirectories(file.getParent());
+
+		long offset = Files.exists(partial) ? Files.size(partial) : 0;
+		URL source = mirror(url);
+		URLConnection connection = source.openConnection();
+		boolean append = false;
+
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+
+		if (connection instanceof HttpURLConnection) {
+			HttpURLConnection http = (HttpURLConnection) connection;
+
+			if (offset > 0) {
+				http.setRequestProperty("Range", "bytes=" + offset + "-");
+			}
+
+			int code = http.getResponseCode();
+
+			if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+				throw new IOException("Not found: " + source);
+			} else if (code == 416) {
+				// The range starts at the end of the file on the server, either because the partial file is complete
+				// and was only not moved in place, or because it is no longer a prefix of the file
+				long length = parseTotalLength(http.getHeaderField("Content-Range"));
+				http.disconnect();
+
+				if (sha1 != null ? ArtifactStore.hash(partial, "SHA-1").equalsIgnoreCase(sha1) : length == offset) {
+					Patchwork.LOGGER.info("The download of %s was already complete", file.getFileName());
+
+					return finish(partial, file);
+				}
+
+				Files.delete(partial);
+
+				return download(url, sha1);
+			} else if (code >= 400) {
+				throw new IOException("Server returned HTTP " + code + " for " + source);
+			}
+
+			append = code == HttpURLConnection.HTTP_PARTIAL;
+		}
+
+		if (append) {
+			Patchwork.LOGGER.info("Resuming the download of %s from %s bytes", file.getFileName(), offset);
+		} else {
+			Patchwork.LOGGER.info("Downloading %s", source);
+		}
+
+		try (InputStream input = connection.getInputStream();
+				OutputStream output = Files.newOutputStream(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+			IOUtils.copy(input, output);
+		}
+
+		if (sha1 != null) {
+			String actual = ArtifactStore.hash(partial, "SHA-1");
+
+			if (!actual.equalsIgnoreCase(sha1)) {
+				Files.delete(partial);
+
+				throw new IOException("Download of " + source + " is corrupt: expected SHA-1 " + sha1 + " but got " + actual);
+			}
+		}
+
+		return finish(partial, file);
+	}
+
+	private Path finish(Path partial, Path file) throws IOException {
+		Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+		finished.add(file);
+
+		return file;
+	}
+
+	/**
+	 * @param contentRange the Content-Range header of a response, or null
+	 * @return the length of the whole file, or -1 if it is not known
+	 */
+	private static long parseTotalLength(String contentRange) {
+		if (contentRange == null) {
+			return -1;
+		}
+
+		String length = contentRange.substring(contentRange.lastIndexOf('/') + 1).trim();
+
+		try {
+			return length.equals("*") ? -1 : Long.parseLong(length);
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Downloads a file from a maven repository, checking it against the {@code .sha1} file next to it if there is one.
+	 */
+	public Path downloadMaven(URL url) throws IOException {
+		String sha1 = null;
+
+		try (InputStream input = openStream(new URL(url + ".sha1"))) {
+			// Some repositories put the file name after the hash
+			sha1 = IOUtils.toString(input, StandardCharsets.UTF_8).trim().split("\\s+")[0];
+		} catch (IOException ex) {
+			Patchwork.LOGGER.warn("Could not get the SHA-1 of %s, it will not be checked: %s", url, ex.getMessage());
+		}
+
+		return download(url, sha1);
+	}
+
+	/**
+	 * Opens a small file, such as version metadata, without keeping a copy of it.
+	 */
+	public static InputStream openStream(URL url) throws IOException {
+		URLConnection connection = mirror(url).openConnection();
+
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+
+		return connection.getInputStream();
+	}
+
+	/**
+	 * @return where to get a URL from, which is the URL itself unless a mirror is set
+	 */
+	private static URL mirror(URL url) throws MalformedURLException {
+		String mirror = System.getProperty("patchwork:mirror");
+
+		if (mirror == null) {
+			return url;
+		}
+
+		String path = url.getHost() + url.getFile();
+
+		if (mirror.contains("://")) {
+			return new URL(mirror.endsWith("/") ? mirror + path : mirror + "/" + path);
+		}
+
+		return Paths.get(mirror).resolve(path).toUri().toURL();
+	}
+
+	/**
+	 * Stops any downloads still running, and deletes the finished ones. Partial downloads are kept to be resumed.
+	 */
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+
+		for (Path file : finished) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	public interface Download {
+		Path download() throws IOException;
+	}
+}
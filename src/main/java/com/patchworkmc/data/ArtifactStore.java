@@ -0,0 +1,402 @@
+package com.patchworkmc.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import com.patchworkmc.Patchwork;
+
+/**
+ * Keeps track of the files Patchwork downloads and generates into the data folder, such as mappings and remapped
+ * Minecraft jars.
+ *
+ * <p>Each artifact is recorded in {@code artifacts.json} with the hash of its contents, the Minecraft version it
+ * belongs to, and the hashes of the artifacts it was made from. An artifact is only reused if it still has the same
+ * contents and every artifact it was made from is unchanged, otherwise it is made again. Artifacts are written to a
+ * temporary file first and then moved into place, so a crash never leaves a partial artifact behind.</p>
+ *
+ * <p>A file that is already in the data folder but not in the index, because it was made before the index existed or
+ * the index was lost, is adopted rather than made again if it can be verified: it must have the SHA-1 it is expected
+ * to have, if one is known, and be newer than every artifact it is made from.</p>
+ *
+ * <p>If the {@code patchwork:data_quota_mb} system property is set, {@link #evict(String)} deletes the artifacts of the
+ * least recently used Minecraft versions until the folder fits in that many megabytes.</p>
+ */
+public class ArtifactStore {
+	private static final String INDEX = "artifacts.json";
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+	private final Path directory;
+	private final Map<String, Artifact> artifacts;
+
+	private ArtifactStore(Path directory, Map<String, Artifact> artifacts) {
+		this.directory = directory;
+		this.artifacts = artifacts;
+	}
+
+	/**
+	 * Opens the store of a data folder, starting over if its index is missing or unreadable.
+	 */
+	public static ArtifactStore open(Path directory) throws IOException {
+		Files.createDirectories(directory);
+
+		Map<String, Artifact> artifacts = null;
+
+		try (Reader reader = Files.newBufferedReader(directory.resolve(INDEX), StandardCharsets.UTF_8)) {
+			Index index = GSON.fromJson(reader, Index.class);
+
+			if (index != null) {
+				artifacts = index.artifacts;
+			}
+		} catch (NoSuchFileException ex) {
+			// A new data folder
+		} catch (IOException | JsonParseException ex) {
+			Patchwork.LOGGER.warn("Ignoring the unreadable artifact index of %s: %s", directory, ex.getMessage());
+		}
+
+		return new ArtifactStore(directory, artifacts == null ? new TreeMap<>() : new TreeMap<>(artifacts));
+	}
+
+	/**
+	 * Gets an artifact, making it if it is missing, was changed, or any of its dependencies changed since it was made.
+	 *
+	 * @param name         the path of the artifact in the data folder
+	 * @param version      the Minecraft version the artifact belongs to
+	 * @param dependencies the names of the artifacts this one is made from, which must already be in the store
+	 * @param sha1         the SHA-1 the artifact is known to have, which an existing file that is not in the store must
+	 *                     match to be adopted, or null if it is not known
+	 * @param producer     writes the artifact to the path it is given
+	 * @return the path of the artifact
+	 */
+	public synchronized Path get(String name, String version, List<String> dependencies, String sha1, Producer producer) throws IOException {
+		Path path = directory.resolve(name);
+		Map<String, String> dependencyHashes = new LinkedHashMap<>();
+
+		for (String dependency : dependencies) {
+			Artifact artifact = artifacts.get(dependency);
+
+			if (artifact == null) {
+				throw new IllegalStateException("Artifact " + name + " depends on " + dependency + ", which is not in the store");
+			}
+
+			dependencyHashes.put(dependency, artifact.sha256);
+		}
+
+		Artifact artifact = artifacts.get(name);
+
+		if (artifact != null && dependencyHashes.equals(artifact.dependencies) && isIntact(path, artifact)) {
+			artifact.lastUsed = System.currentTimeMillis();
+			save();
+
+			return path;
+		}
+
+		if (artifact == null && canAdopt(name, path, dependencies, sha1)) {
+			Patchwork.LOGGER.info("Adopting %s, which is not in the artifact index yet", name);
+
+			artifacts.put(name, record(path, version, dependencyHashes));
+			save();
+
+			return path;
+		}
+
+		if (artifact != null) {
+			Patchwork.LOGGER.info("Cached %s is out of date, making it again", name);
+		}
+
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+
+		try {
+			// Some producers, such as the zip filesystem, create the file themselves
+			Files.delete(temporary);
+			producer.produce(temporary);
+
+			if (!Files.exists(temporary)) {
+				throw new IOException("Nothing was written for " + name);
+			}
+
+			try {
+				Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+
+		artifacts.put(name, record(path, version, dependencyHashes));
+		save();
+
+		return path;
+	}
+
+	public Path get(String name, String version, List<String> dependencies, Producer producer) throws IOException {
+		return get(name, version, dependencies, null, producer);
+	}
+
+	public Path get(String name, String version, Producer producer) throws IOException {
+		return get(name, version, Collections.emptyList(), null, producer);
+	}
+
+	/**
+	 * @return whether an artifact that is not made from other artifacts is in the store and unchanged, or is a file
+	 * that would be adopted, so that {@link #get(String, String, Producer)} would not make it again
+	 */
+	public synchronized boolean has(String name) throws IOException {
+		Path path = directory.resolve(name);
+		Artifact artifact = artifacts.get(name);
+
+		if (artifact == null) {
+			return canAdopt(name, path, Collections.emptyList(), null);
+		}
+
+		return Collections.emptyMap().equals(artifact.dependencies) && isIntact(path, artifact);
+	}
+
+	/**
+	 * @return whether the index has a record of an artifact, whether or not it is still intact
+	 */
+	public synchronized boolean contains(String name) {
+		return artifacts.containsKey(name);
+	}
+
+	/**
+	 * Records a file that is put into the data folder by hand rather than made by Patchwork, such as mappings given to
+	 * the command line, so that artifacts can depend on it.
+	 *
+	 * @return the path of the file
+	 * @throws NoSuchFileException if the file does not exist
+	 */
+	public synchronized Path track(String name, String version) throws IOException {
+		Path path = directory.resolve(name);
+
+		if (!Files.exists(path)) {
+			throw new NoSuchFileException(path.toString());
+		}
+
+		Artifact artifact = artifacts.get(name);
+
+		if (artifact == null || !isIntact(path, artifact)) {
+			artifact = record(path, version, Collections.emptyMap());
+			artifacts.put(name, artifact);
+		}
+
+		artifact.lastUsed = System.currentTimeMillis();
+		save();
+
+		return path;
+	}
+
+	/**
+	 * Forgets an artifact, so that the next {@link #get} makes it again.
+	 */
+	public synchronized void invalidate(String name) throws IOException {
+		if (artifacts.remove(name) != null) {
+			save();
+		}
+	}
+
+	/**
+	 * Deletes the artifacts of the least recently used Minecraft versions until the store fits in the quota set by the
+	 * {@code patchwork:data_quota_mb} system property. Does nothing if there is no quota.
+	 *
+	 * @param keepVersion the version in use, which is never evicted
+	 */
+	public synchronized void evict(String keepVersion) throws IOException {
+		Long quota = Long.getLong("patchwork:data_quota_mb");
+
+		if (quota == null) {
+			return;
+		}
+
+		long maxBytes = quota * 1024 * 1024;
+		long totalBytes = artifacts.values().stream().mapToLong(artifact -> artifact.size).sum();
+		Map<String, Long> versionLastUsed = new HashMap<>();
+
+		for (Artifact artifact : artifacts.values()) {
+			versionLastUsed.merge(artifact.version, artifact.lastUsed, Math::max);
+		}
+
+		List<String> versions = new ArrayList<>(versionLastUsed.keySet());
+		versions.remove(keepVersion);
+		versions.sort(Comparator.comparing(versionLastUsed::get));
+
+		for (String version : versions) {
+			if (totalBytes <= maxBytes) {
+				break;
+			}
+
+			Patchwork.LOGGER.info("Evicting the cached artifacts of Minecraft %s", version);
+
+			for (Map.Entry<String, Artifact> entry : new ArrayList<>(artifacts.entrySet())) {
+				if (entry.getValue().version.equals(version)) {
+					Files.deleteIfExists(directory.resolve(entry.getKey()));
+					artifacts.remove(entry.getKey());
+					totalBytes -= entry.getValue().size;
+				}
+			}
+		}
+
+		save();
+
+		if (totalBytes > maxBytes) {
+			Patchwork.LOGGER.warn("The artifacts of Minecraft %s alone are over the data quota of %s MB", keepVersion, quota);
+		}
+	}
+
+	/**
+	 * Checks whether a file that is not in the index can be used as the artifact it is named after. Without a record
+	 * of what it was made from, the best that can be done is to check it against the SHA-1 it should have, and that it
+	 * was made after everything it is made from, the way make does.
+	 */
+	private boolean canAdopt(String name, Path path, List<String> dependencies, String sha1) throws IOException {
+		if (!Files.isRegularFile(path) || Files.size(path) == 0) {
+			return false;
+		}
+
+		if (sha1 != null && !hash(path, "SHA-1").equalsIgnoreCase(sha1)) {
+			Patchwork.LOGGER.warn("Not adopting %s, as it does not have the SHA-1 %s", name, sha1);
+
+			return false;
+		}
+
+		long modified = Files.getLastModifiedTime(path).toMillis();
+
+		for (String dependency : dependencies) {
+			Path dependencyPath = directory.resolve(dependency);
+
+			if (!Files.exists(dependencyPath) || Files.getLastModifiedTime(dependencyPath).toMillis() > modified) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks that a file still has the contents it was recorded with. The file is only hashed again if its size or
+	 * modification time changed.
+	 */
+	private static boolean isIntact(Path path, Artifact artifact) throws IOException {
+		if (!Files.exists(path) || Files.size(path) != artifact.size) {
+			return false;
+		}
+
+		if (Files.getLastModifiedTime(path).toMillis() == artifact.modified) {
+			return true;
+		}
+
+		if (!hash(path, "SHA-256").equals(artifact.sha256)) {
+			return false;
+		}
+
+		artifact.modified = Files.getLastModifiedTime(path).toMillis();
+
+		return true;
+	}
+
+	private static Artifact record(Path path, String version, Map<String, String> dependencies) throws IOException {
+		Artifact artifact = new Artifact();
+
+		artifact.version = version;
+		artifact.sha256 = hash(path, "SHA-256");
+		artifact.size = Files.size(path);
+		artifact.modified = Files.getLastModifiedTime(path).toMillis();
+		artifact.lastUsed = System.currentTimeMillis();
+		artifact.dependencies = dependencies;
+
+		return artifact;
+	}
+
+	/**
+	 * @param algorithm a {@link MessageDigest} algorithm that every Java platform supports, such as SHA-1 or SHA-256
+	 * @return the hex digest of a file
+	 */
+	static String hash(Path path, String algorithm) throws IOException {
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(algorithm + " is always supported", ex);
+		}
+
+		try (InputStream stream = new DigestInputStream(Files.newInputStream(path), digest)) {
+			byte[] buffer = new byte[65536];
+
+			while (stream.read(buffer) != -1) {
+				// Only read for the digest
+			}
+		}
+
+		StringBuilder hex = new StringBuilder();
+
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+
+		return hex.toString();
+	}
+
+	private void save() throws IOException {
+		Index index = new Index();
+		index.artifacts = artifacts;
+
+		Path file = directory.resolve(INDEX);
+		Path temporary = Files.createTempFile(directory, INDEX, ".tmp");
+
+		try {
+			try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+				GSON.toJson(index, writer);
+			}
+
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	public interface Producer {
+		void produce(Path output) throws IOException;
+	}
+
+	private static class Index {
+		private Map<String, Artifact> artifacts;
+	}
+
+	private static class Artifact {
+		private String version;
+		private String sha256;
+		private long size;
+		private long modified;
+		private long lastUsed;
+		private Map<String, String> dependencies;
+	}
+}
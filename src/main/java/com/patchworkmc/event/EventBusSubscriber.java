@@ -1,5 +1,9 @@
 package com.patchworkmc.event;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class EventBusSubscriber {
 	String targetModId;
 	boolean client;
@@ -33,6 +37,29 @@ public class EventBusSubscriber {
 		return bus;
 	}
 
+	/**
+	 * Writes the subscriber in a binary form that can be read back with {@link #read(DataInput)}.
+	 */
+	public void write(DataOutput output) throws IOException {
+		output.writeBoolean(targetModId != null);
+
+		if (targetModId != null) {
+			output.writeUTF(targetModId);
+		}
+
+		output.writeBoolean(client);
+		output.writeBoolean(server);
+		output.writeByte(bus.ordinal());
+	}
+
+	public static EventBusSubscriber read(DataInput input) throws IOException {
+		String targetModId = input.readBoolean() ? input.readUTF() : null;
+		boolean client = input.readBoolean();
+		boolean server = input.readBoolean();
+
+		return new EventBusSubscriber(targetModId, client, server, Bus.values()[input.readUnsignedByte()]);
+	}
+
 	@Override
 	public String toString() {
 		return "EventBusSubscriber{" + "targetModId='" + targetModId + '\'' + ", server=" + server + ", client=" + client + ", bus=" + bus + '}';
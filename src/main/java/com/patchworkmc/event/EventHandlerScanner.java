@@ -10,6 +10,9 @@ import org.objectweb.asm.Opcodes;
 import com.patchworkmc.Patchwork;
 
 public class EventHandlerScanner extends ClassVisitor {
+	public static final String EVENT_BUS_SUBSCRIBER = "Lnet/minecraftforge/fml/common/Mod$EventBusSubscriber;";
+	public static final String SUBSCRIBE_EVENT = "Lnet/minecraftforge/eventbus/api/SubscribeEvent;";
+
 	private Consumer<EventBusSubscriber> subscriberConsumer;
 	private Consumer<SubscribeEvent> subscribeEventConsumer;
 	private String className;
@@ -30,7 +33,7 @@ public class EventHandlerScanner extends ClassVisitor {
 
 	@Override
 	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-		if (descriptor.equals("Lnet/minecraftforge/fml/common/Mod$EventBusSubscriber;")) {
+		if (descriptor.equals(EVENT_BUS_SUBSCRIBER)) {
 			return new EventBusSubscriberHandler(subscriberConsumer);
 		} else {
 			return super.visitAnnotation(descriptor, visible);
@@ -61,7 +64,7 @@ public class EventHandlerScanner extends ClassVisitor {
 
 		@Override
 		public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
-			if (!annotation.equals("Lnet/minecraftforge/eventbus/api/SubscribeEvent;")) {
+			if (!annotation.equals(SUBSCRIBE_EVENT)) {
 				return super.visitAnnotation(annotation, visible);
 			}
 
@@ -9,13 +9,13 @@ import org.objectweb.asm.Opcodes;
  * Processes Cancelable and HasResult annotations, blocks overriding getListenerList and getParentListenerList.
  */
 public class EventSubclassTransformer extends ClassVisitor {
-	private static final String CANCELABLE_ANNOTATION = "Lnet/minecraftforge/eventbus/api/Cancelable;";
-	private static final String HAS_RESULT_ANNOTATION = "Lnet/minecraftforge/eventbus/api/Event$HasResult;";
+	public static final String CANCELABLE_ANNOTATION = "Lnet/minecraftforge/eventbus/api/Cancelable;";
+	public static final String HAS_RESULT_ANNOTATION = "Lnet/minecraftforge/eventbus/api/Event$HasResult;";
 	private static final String IS_CANCELABLE = "isCancelable";
 	private static final String BOOLEAN_DESCRIPTOR = "()Z";
 	private static final String HAS_RESULT = "hasResult";
-	private static final String GET_LISTENER_LIST = "getListenerList";
-	private static final String GET_PARENT_LISTENER_LIST = "getParentListenerList";
+	public static final String GET_LISTENER_LIST = "getListenerList";
+	public static final String GET_PARENT_LISTENER_LIST = "getParentListenerList";
 	private static final String GET_LISTENER_LIST_DESCRIPTOR = "()Lnet/minecraftforge/eventbus/ListenerList;";
 
 	private boolean cancelable;
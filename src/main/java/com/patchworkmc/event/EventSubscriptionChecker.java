@@ -2,6 +2,7 @@ package com.patchworkmc.event;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -10,26 +11,25 @@ import java.util.Set;
 
 import org.objectweb.asm.Opcodes;
 
+import com.patchworkmc.transformer.ClassHierarchy;
+
 // Currently patchwork cannot handle @SubscribeEvent for overloaded methods
 public class EventSubscriptionChecker {
-	private static class Entry {
-		public List<SubscribeEvent> subscribeEvents;
-		public List<String> superClasses;
-
-		Entry(List<SubscribeEvent> subscribeEvents, List<String> superClasses) {
-			this.subscribeEvents = subscribeEvents;
-			this.superClasses = superClasses;
-		}
-	}
+	private final Map<String, List<SubscribeEvent>> entries = new HashMap<>();
+	private final Map<String, List<SubscribeEvent>> transitiveSubscriptions = new HashMap<>();
+	private final ClassHierarchy hierarchy;
 
-	private Map<String, Entry> entries = new HashMap<>();
 	private static final List<String> missingClassWhiteList = Arrays.asList(
 			"java/",
 			"net/minecraft/",
 			"net/minecraftforge/"
 	);
 
-	public EventSubscriptionChecker() {
+	/**
+	 * @param hierarchy the index that scanned classes are added to, and that supertypes are looked up in
+	 */
+	public EventSubscriptionChecker(ClassHierarchy hierarchy) {
+		this.hierarchy = hierarchy;
 	}
 
 	public void onClassScanned(
@@ -37,16 +37,25 @@ public class EventSubscriptionChecker {
 			List<SubscribeEvent> subscribeEvents,
 			List<String> superClasses
 	) {
-		entries.put(className, new Entry(subscribeEvents, superClasses));
+		entries.put(className, subscribeEvents);
+		hierarchy.addClass(className, superClasses);
+	}
+
+	/**
+	 * Adds the classes scanned by another checker, for merging checkers that were filled concurrently. The hierarchy
+	 * of the other checker is not merged.
+	 */
+	public void addAll(EventSubscriptionChecker other) {
+		entries.putAll(other.entries);
 	}
 
 	public void check() {
-		entries.forEach((className, entry) -> {
-			if (entry.subscribeEvents.isEmpty()) {
+		entries.forEach((className, subscriptions) -> {
+			if (subscriptions.isEmpty()) {
 				return;
 			}
 
-			List<SubscribeEvent> subscribeEvents = gatherSubscriptions(className, "");
+			List<SubscribeEvent> subscribeEvents = gatherSubscriptions(className);
 
 			Set<String> descriptions = new HashSet<>();
 
@@ -70,26 +79,34 @@ public class EventSubscriptionChecker {
 		});
 	}
 
-	private List<SubscribeEvent> gatherSubscriptions(String currentClass, String subClass) {
-		Entry entry = entries.get(currentClass);
-
-		if (entry == null) {
-			if (!shouldTolerateMissingClass(currentClass, entry)) {
-				throw new RuntimeException(
-						"Missing information for class " + currentClass
-								+ (subClass.isEmpty() ? "" : (" which is the super class of " + subClass))
-				);
-			}
+	/**
+	 * Gathers the subscriptions of a class and all of its supertypes. The result is cached.
+	 */
+	private List<SubscribeEvent> gatherSubscriptions(String className) {
+		List<SubscribeEvent> cached = transitiveSubscriptions.get(className);
 
-			return new ArrayList<>();
+		if (cached != null) {
+			return cached;
 		}
 
-		ArrayList<SubscribeEvent> result = new ArrayList<>(entry.subscribeEvents);
+		List<SubscribeEvent> result = new ArrayList<>(entries.getOrDefault(className, Collections.emptyList()));
+
+		for (String ancestor : hierarchy.getAncestors(className)) {
+			List<SubscribeEvent> subscriptions = entries.get(ancestor);
+
+			if (subscriptions == null) {
+				if (!hierarchy.contains(ancestor) && !shouldTolerateMissingClass(ancestor)) {
+					throw new RuntimeException("Missing information for class " + ancestor + " which is a super class of " + className);
+				}
 
-		for (String superClass : entry.superClasses) {
-			result.addAll(gatherSubscriptions(superClass, currentClass));
+				continue;
+			}
+
+			result.addAll(subscriptions);
 		}
 
+		transitiveSubscriptions.put(className, result);
+
 		return result;
 	}
 
@@ -99,7 +116,7 @@ public class EventSubscriptionChecker {
 				+ subscribeEvent.getEventClass();
 	}
 
-	private boolean shouldTolerateMissingClass(String className, Entry entry) {
+	private boolean shouldTolerateMissingClass(String className) {
 		return missingClassWhiteList.stream()
 				.anyMatch(className::startsWith);
 	}
@@ -1,5 +1,8 @@
 package com.patchworkmc.event;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Optional;
 
 public class SubscribeEvent {
@@ -53,6 +56,37 @@ public class SubscribeEvent {
 		return hasReturnValue;
 	}
 
+	/**
+	 * Writes the subscriber in a binary form that can be read back with {@link #read(DataInput)}.
+	 */
+	public void write(DataOutput output) throws IOException {
+		output.writeInt(access);
+		output.writeUTF(method);
+		output.writeUTF(eventClass);
+		output.writeBoolean(genericClass != null);
+
+		if (genericClass != null) {
+			output.writeUTF(genericClass);
+		}
+
+		output.writeBoolean(hasReturnValue);
+		output.writeUTF(priority);
+		output.writeBoolean(receiveCancelled);
+	}
+
+	public static SubscribeEvent read(DataInput input) throws IOException {
+		int access = input.readInt();
+		String method = input.readUTF();
+		String eventClass = input.readUTF();
+		String genericClass = input.readBoolean() ? input.readUTF() : null;
+		SubscribeEvent subscribeEvent = new SubscribeEvent(access, method, eventClass, genericClass, input.readBoolean());
+
+		subscribeEvent.priority = input.readUTF();
+		subscribeEvent.receiveCancelled = input.readBoolean();
+
+		return subscribeEvent;
+	}
+
 	@Override
 	public String toString() {
 		return "SubscribeEvent{"
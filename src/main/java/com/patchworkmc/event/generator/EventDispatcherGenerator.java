@@ -0,0 +1,149 @@
+package com.patchworkmc.event.generator;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.event.SubscribeEvent;
+import com.patchworkmc.generator.LambdaGenerator;
+
+/**
+ * Generates a single event dispatcher class for a whole mod, in place of the classes generated by
+ * {@link SubscribeEventGenerator}, {@link StaticEventRegistrarGenerator} and {@link InstanceEventRegistrarGenerator}.
+ *
+ * <p>The dispatcher has a static registrar method for each class with {@code @SubscribeEvent} methods. The event
+ * handlers themselves are bound with {@code invokedynamic}, so no class is generated for them at all.</p>
+ */
+public class EventDispatcherGenerator {
+	// Class descriptor for IEventBus
+	private static final String EVENT_BUS = "Lnet/minecraftforge/eventbus/api/IEventBus;";
+	// Method descriptor for addListener()
+	private static final String ADD_DESCRIPTOR = "(Lnet/minecraftforge/eventbus/api/EventPriority;ZLjava/lang/Class;Ljava/util/function/Consumer;)V";
+	// Method descriptor for addGenericListener()
+	private static final String ADD_GENERIC_DESCRIPTOR = "(Ljava/lang/Class;Lnet/minecraftforge/eventbus/api/EventPriority;ZLjava/lang/Class;Ljava/util/function/Consumer;)V";
+
+	private EventDispatcherGenerator() {
+		// NO-OP
+	}
+
+	/**
+	 * Generates the dispatcher.
+	 *
+	 * @param dispatcherName      the name of the class to generate
+	 * @param subscribers         the classes with {@code @SubscribeEvent} methods
+	 * @param visitor             the class visitor that will be visited with the dispatcher class
+	 * @param staticRegistrars    receives the static registrar methods that were generated, as methodName -> baseName
+	 * @param instanceRegistrars  receives the instance registrar methods that were generated, as methodName -> baseName
+	 */
+	public static void generate(String dispatcherName, List<Subscriber> subscribers, ClassVisitor visitor,
+			List<Map.Entry<String, String>> staticRegistrars, List<Map.Entry<String, String>> instanceRegistrars) {
+		visitor.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, dispatcherName, null, "java/lang/Object", null);
+
+		for (int i = 0; i < subscribers.size(); i++) {
+			Subscriber subscriber = subscribers.get(i);
+			String targetClass = subscriber.getTargetClass();
+
+			if (!subscriber.getStaticEvents().isEmpty()) {
+				String methodName = "registerStatic" + i;
+				MethodVisitor method = visitor.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, methodName, "(" + EVENT_BUS + ")V", null, null);
+
+				for (SubscribeEvent entry : subscriber.getStaticEvents()) {
+					visitAddListener(method, targetClass, entry, 0, -1);
+				}
+
+				method.visitInsn(Opcodes.RETURN);
+
+				method.visitMaxs(6, 1);
+				method.visitEnd();
+
+				staticRegistrars.add(new AbstractMap.SimpleImmutableEntry<>(methodName, targetClass));
+			}
+
+			if (!subscriber.getInstanceEvents().isEmpty()) {
+				String methodName = "registerInstance" + i;
+				String descriptor = "(L" + targetClass + ";" + EVENT_BUS + ")V";
+				MethodVisitor method = visitor.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, methodName, descriptor, null, null);
+
+				for (SubscribeEvent entry : subscriber.getInstanceEvents()) {
+					visitAddListener(method, targetClass, entry, 1, 0);
+				}
+
+				method.visitInsn(Opcodes.RETURN);
+
+				method.visitMaxs(6, 2);
+				method.visitEnd();
+
+				instanceRegistrars.add(new AbstractMap.SimpleImmutableEntry<>(methodName, targetClass));
+			}
+		}
+
+		visitor.visitEnd();
+	}
+
+	private static void visitAddListener(MethodVisitor method, String targetClass, SubscribeEvent subscriber, int busIndex, int instanceIndex) {
+		if (subscriber.hasReturnValue()) {
+			Patchwork.LOGGER.error("TODO: Handle @SubscribeEvent handler that does not return void: class " + targetClass + ", method " + subscriber.getMethod());
+		}
+
+		// Load the IEventBus object on to the stack
+		method.visitVarInsn(Opcodes.ALOAD, busIndex);
+
+		// Adds the generic class on to the stack if this is a generic listener
+		subscriber.getGenericClass().ifPresent(genericClass -> method.visitLdcInsn(Type.getObjectType(genericClass)));
+
+		// Adds the event priority
+		method.visitFieldInsn(Opcodes.GETSTATIC, "net/minecraftforge/eventbus/api/EventPriority", subscriber.getPriority(), "Lnet/minecraftforge/eventbus/api/EventPriority;");
+
+		// Loads 1 (true) if the subscriber wants to receive cancelled events, 0 (false)
+		// otherwise
+		method.visitInsn(subscriber.receiveCancelled() ? Opcodes.ICONST_1 : Opcodes.ICONST_0);
+
+		method.visitLdcInsn(Type.getObjectType(subscriber.getEventClass()));
+
+		// Bind the handler to a Consumer, capturing the instance for instance handlers
+		if (instanceIndex == -1) {
+			LambdaGenerator.visitStaticConsumer(method, targetClass, subscriber.getMethod(), subscriber.getMethodDescriptor());
+		} else {
+			method.visitVarInsn(Opcodes.ALOAD, instanceIndex);
+			LambdaGenerator.visitInstanceConsumer(method, targetClass, subscriber.getMethod(), subscriber.getMethodDescriptor());
+		}
+
+		boolean generic = subscriber.getGenericClass().isPresent();
+
+		method.visitMethodInsn(Opcodes.INVOKEINTERFACE, "net/minecraftforge/eventbus/api/IEventBus",
+				generic ? "addGenericListener" : "addListener", generic ? ADD_GENERIC_DESCRIPTOR : ADD_DESCRIPTOR, true);
+	}
+
+	/**
+	 * A class with {@code @SubscribeEvent} methods.
+	 */
+	public static class Subscriber {
+		private final String targetClass;
+		private final List<SubscribeEvent> staticEvents;
+		private final List<SubscribeEvent> instanceEvents;
+
+		public Subscriber(String targetClass, List<SubscribeEvent> staticEvents, List<SubscribeEvent> instanceEvents) {
+			this.targetClass = targetClass;
+			this.staticEvents = staticEvents;
+			this.instanceEvents = instanceEvents;
+		}
+
+		public String getTargetClass() {
+			return targetClass;
+		}
+
+		public List<SubscribeEvent> getStaticEvents() {
+			return staticEvents;
+		}
+
+		public List<SubscribeEvent> getInstanceEvents() {
+			return instanceEvents;
+		}
+	}
+}
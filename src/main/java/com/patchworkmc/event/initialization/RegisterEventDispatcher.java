@@ -0,0 +1,63 @@
+package com.patchworkmc.event.initialization;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.patchworkmc.generator.LambdaGenerator;
+
+/**
+ * Registers the registrar methods of a dispatcher generated by
+ * {@link com.patchworkmc.event.generator.EventDispatcherGenerator}, the same way {@link RegisterEventRegistrars}
+ * registers registrar classes.
+ */
+public class RegisterEventDispatcher implements Consumer<MethodVisitor> {
+	private static final String EVENT_BUS = "Lnet/minecraftforge/eventbus/api/IEventBus;";
+
+	private String dispatcherName;
+	private Iterable<Map.Entry<String, String>> staticEventRegistrars;
+	private Iterable<Map.Entry<String, String>> instanceEventRegistrars;
+
+	public RegisterEventDispatcher(String dispatcherName, Iterable<Map.Entry<String, String>> staticEventRegistrars, Iterable<Map.Entry<String, String>> instanceEventRegistrars) {
+		this.dispatcherName = dispatcherName;
+		this.staticEventRegistrars = staticEventRegistrars;
+		this.instanceEventRegistrars = instanceEventRegistrars;
+	}
+
+	@Override
+	public void accept(MethodVisitor method) {
+		for (Map.Entry<String, String> entry : staticEventRegistrars) {
+			String methodName = entry.getKey();
+			String baseName = entry.getValue();
+
+			method.visitFieldInsn(Opcodes.GETSTATIC, "net/minecraftforge/eventbus/api/EventRegistrarRegistry", "INSTANCE", "Lnet/minecraftforge/eventbus/api/EventRegistrarRegistry;");
+
+			method.visitLdcInsn(Type.getObjectType(baseName));
+
+			LambdaGenerator.visitStaticConsumer(method, dispatcherName, methodName, "(" + EVENT_BUS + ")V");
+
+			method.visitMethodInsn(Opcodes.INVOKEINTERFACE, "net/minecraftforge/eventbus/api/EventRegistrarRegistry", "registerStatic", "(Ljava/lang/Class;Ljava/util/function/Consumer;)V", true);
+		}
+
+		for (Map.Entry<String, String> entry : instanceEventRegistrars) {
+			String methodName = entry.getKey();
+			String baseName = entry.getValue();
+
+			method.visitFieldInsn(Opcodes.GETSTATIC, "net/minecraftforge/eventbus/api/EventRegistrarRegistry", "INSTANCE", "Lnet/minecraftforge/eventbus/api/EventRegistrarRegistry;");
+
+			method.visitLdcInsn(Type.getObjectType(baseName));
+
+			LambdaGenerator.visitStaticBiConsumer(method, dispatcherName, methodName, "(L" + baseName + ";" + EVENT_BUS + ")V");
+
+			method.visitMethodInsn(Opcodes.INVOKEINTERFACE, "net/minecraftforge/eventbus/api/EventRegistrarRegistry", "registerInstance", "(Ljava/lang/Class;Ljava/util/function/BiConsumer;)V", true);
+		}
+
+		method.visitInsn(Opcodes.RETURN);
+
+		method.visitMaxs(3, 0);
+		method.visitEnd();
+	}
+}
@@ -0,0 +1,81 @@
+package com.patchworkmc.generator;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * A utility for creating functional interface instances with {@code invokedynamic} and
+ * {@link java.lang.invoke.LambdaMetafactory}, like javac does for lambdas and method references.
+ *
+ * <p>This is an alternative to {@link ConsumerGenerator} and {@link BiConsumerGenerator} which does not need a class
+ * file for each implementation: the JVM spins the implementing class at runtime when the call site is linked.</p>
+ */
+public class LambdaGenerator {
+	private static final Handle METAFACTORY = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+			false);
+
+	private static final String CONSUMER = "java/util/function/Consumer";
+	private static final String BI_CONSUMER = "java/util/function/BiConsumer";
+
+	private LambdaGenerator() {
+		// NO-OP
+	}
+
+	/**
+	 * Pushes a {@link java.util.function.Consumer} that calls a static method onto the stack.
+	 *
+	 * @param method         the method to emit the instruction to
+	 * @param owner          the class declaring the implementation method
+	 * @param name           the name of the implementation method
+	 * @param descriptor     the descriptor of the implementation method, which must take a single argument
+	 */
+	public static void visitStaticConsumer(MethodVisitor method, String owner, String name, String descriptor) {
+		Handle implementation = new Handle(Opcodes.H_INVOKESTATIC, owner, name, descriptor, false);
+
+		visitLambda(method, CONSUMER, "()", implementation, descriptor);
+	}
+
+	/**
+	 * Pushes a {@link java.util.function.Consumer} that calls an instance method onto the stack. The instance the
+	 * method is called on must be on the top of the stack, and is captured by the consumer.
+	 *
+	 * @param method         the method to emit the instruction to
+	 * @param owner          the class declaring the implementation method
+	 * @param name           the name of the implementation method
+	 * @param descriptor     the descriptor of the implementation method, which must take a single argument
+	 */
+	public static void visitInstanceConsumer(MethodVisitor method, String owner, String name, String descriptor) {
+		Handle implementation = new Handle(Opcodes.H_INVOKEVIRTUAL, owner, name, descriptor, false);
+
+		visitLambda(method, CONSUMER, "(L" + owner + ";)", implementation, descriptor);
+	}
+
+	/**
+	 * Pushes a {@link java.util.function.BiConsumer} that calls a static method onto the stack.
+	 *
+	 * @param method         the method to emit the instruction to
+	 * @param owner          the class declaring the implementation method
+	 * @param name           the name of the implementation method
+	 * @param descriptor     the descriptor of the implementation method, which must take two arguments
+	 */
+	public static void visitStaticBiConsumer(MethodVisitor method, String owner, String name, String descriptor) {
+		Handle implementation = new Handle(Opcodes.H_INVOKESTATIC, owner, name, descriptor, false);
+
+		visitLambda(method, BI_CONSUMER, "()", implementation, descriptor);
+	}
+
+	private static void visitLambda(MethodVisitor method, String functionalInterface, String captured, Handle implementation, String instantiated) {
+		Type instantiatedType = Type.getMethodType(Type.VOID_TYPE, Type.getArgumentTypes(instantiated));
+		Type[] erased = new Type[instantiatedType.getArgumentTypes().length];
+
+		for (int i = 0; i < erased.length; i++) {
+			erased[i] = Type.getType(Object.class);
+		}
+
+		method.visitInvokeDynamicInsn("accept", captured + "L" + functionalInterface + ";", METAFACTORY,
+				Type.getMethodType(Type.VOID_TYPE, erased), implementation, instantiatedType);
+	}
+}
@@ -0,0 +1,113 @@
+package com.patchworkmc.jar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import com.patchworkmc.Patchwork;
+
+/**
+ * Generates signature-only copies of the Minecraft jars used as a classpath for remapping.
+ *
+ * <p>Remapping a mod only looks at the names, supertypes and member signatures of the classes on its classpath, but
+ * parsing the full jar also reads every method body. The stub keeps just the class structure: method bodies, debug
+ * information and resources are left out, which makes it a fraction of the size of the original jar.</p>
+ *
+ * <p>The stub is written next to the jar, and is regenerated whenever the jar is newer than it. Setting the
+ * {@code patchwork:classpath_stubs} system property to false uses the full jars instead.</p>
+ */
+public final class ClasspathStub {
+	private ClasspathStub() {
+		// NO-OP
+	}
+
+	/**
+	 * @return the stub of a jar, generated if it does not exist or is out of date, or the jar itself if stubs are
+	 * disabled or the jar does not exist
+	 */
+	public static Path of(Path jar) throws IOException {
+		if (System.getProperty("patchwork:classpath_stubs", "true").equals("false") || !Files.exists(jar)) {
+			return jar;
+		}
+
+		Path stub = getStubPath(jar);
+
+		if (!Files.exists(stub) || Files.getLastModifiedTime(stub).compareTo(Files.getLastModifiedTime(jar)) < 0) {
+			generate(jar, stub);
+		}
+
+		return stub;
+	}
+
+	/**
+	 * @return where the stub of a jar is kept
+	 */
+	public static Path getStubPath(Path jar) {
+		String name = jar.getFileName().toString();
+
+		return jar.resolveSibling((name.endsWith(".jar") ? name.substring(0, name.length() - 4) : name) + "-stub.jar");
+	}
+
+	private static void generate(Path jar, Path stub) throws IOException {
+		Patchwork.LOGGER.info("Generating the classpath stub of %s", jar.getFileName());
+
+		// Other processes may be generating the same stub, so write it to a temporary file and move it into place
+		Path temporary = Files.createTempFile(stub.toAbsolutePath().getParent(), stub.getFileName().toString(), ".tmp");
+
+		try {
+			write(jar, temporary);
+
+			try {
+				Files.move(temporary, stub, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temporary, stub, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Writes the stub of a jar to the given path.
+	 */
+	public static void write(Path jar, Path stub) throws IOException {
+		try (ZipFile input = new ZipFile(jar.toFile());
+				ParallelZipWriter output = new ParallelZipWriter(stub, ZipEntry.DEFLATED, Deflater.BEST_SPEED)) {
+			for (Enumeration<? extends ZipEntry> entries = input.entries(); entries.hasMoreElements(); ) {
+				ZipEntry entry = entries.nextElement();
+
+				if (!entry.getName().endsWith(".class")) {
+					continue;
+				}
+
+				try (InputStream stream = input.getInputStream(entry)) {
+					output.add(entry.getName(), entry.getTime(), stripClass(IOUtils.toByteArray(stream)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the class without its method bodies and debug information. The result is only meant to be read, it does
+	 * not pass verification.
+	 */
+	static byte[] stripClass(byte[] content) {
+		ClassReader reader = new ClassReader(content);
+		ClassWriter writer = new ClassWriter(0);
+
+		reader.accept(writer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		return writer.toByteArray();
+	}
+}
@@ -0,0 +1,68 @@
+package com.patchworkmc.jar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Writes the entries of a jar as plain files in a directory, which Fabric loads the same way as a jar.
+ */
+public class DirectoryWriter implements JarOutput {
+	private final Path root;
+
+	/**
+	 * Creates the directory, deleting anything left in it from an older version of the mod.
+	 */
+	public DirectoryWriter(Path directory) throws IOException {
+		FileUtils.deleteDirectory(directory.toFile());
+		Files.createDirectories(directory);
+		this.root = directory.toAbsolutePath().normalize();
+	}
+
+	@Override
+	public void add(String name, long time, byte[] data) throws IOException {
+		Path target = resolve(name);
+
+		if (name.endsWith("/")) {
+			Files.createDirectories(target);
+			return;
+		}
+
+		Files.createDirectories(target.getParent());
+		Files.write(target, data);
+		Files.setLastModifiedTime(target, FileTime.fromMillis(time));
+	}
+
+	@Override
+	public OutputStream openEntry(String name) throws IOException {
+		Path target = resolve(name);
+
+		Files.createDirectories(target.getParent());
+
+		return Files.newOutputStream(target);
+	}
+
+	@Override
+	public void copy(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+		add(entry.getName(), entry.getTime(), entry.getName().endsWith("/") ? new byte[0] : source.readContent(entry));
+	}
+
+	private Path resolve(String name) throws IOException {
+		Path target = root.resolve(name).normalize();
+
+		if (!target.startsWith(root)) {
+			throw new IOException("Refusing to write " + name + " outside of " + root);
+		}
+
+		return target;
+	}
+
+	@Override
+	public void close() {
+		// NO-OP
+	}
+}
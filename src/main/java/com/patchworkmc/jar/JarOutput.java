@@ -0,0 +1,43 @@
+package com.patchworkmc.jar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.BiConsumer;
+
+/**
+ * Where the entries of a patched mod are written, see {@link OutputMode#open(java.nio.file.Path)}. Entries may be
+ * added from several threads at once.
+ */
+public interface JarOutput extends BiConsumer<String, byte[]>, Closeable {
+	/**
+	 * @param time the modification time of the entry, in milliseconds since the epoch
+	 */
+	void add(String name, long time, byte[] data) throws IOException;
+
+	/**
+	 * Opens an entry to be written as a stream, for data that is too large to build as a whole first. The entry is added
+	 * once the stream is closed, with the current time as its modification time.
+	 */
+	OutputStream openEntry(String name) throws IOException;
+
+	/**
+	 * Copies an entry of a zip file, without decompressing it if the output can take it as it is.
+	 */
+	void copy(RawZipFile source, RawZipFile.Entry entry) throws IOException;
+
+	/**
+	 * Adds an entry with the current time as its modification time.
+	 *
+	 * @throws UncheckedIOException if the entry could not be written
+	 */
+	@Override
+	default void accept(String name, byte[] data) {
+		try {
+			add(name, System.currentTimeMillis(), data);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.patchworkmc.jar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.UnaryOperator;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+
+/**
+ * Fixes up the META-INF of a jar whose classes were remapped, the way tiny-remapper does when it copies the non-class
+ * files of a jar: signatures no longer match the remapped classes, so they are dropped along with the digests in the
+ * manifest, and class names in the manifest and in service declarations are remapped.
+ */
+public final class MetaInf {
+	public static final String MANIFEST = "META-INF/MANIFEST.MF";
+	private static final String SERVICES = "META-INF/services/";
+	private static final Pattern SIGNATURE_FILE = Pattern.compile("^META-INF/([^/]+\\.(SF|RSA|DSA|EC)|SIG-[^/]*)$", Pattern.CASE_INSENSITIVE);
+	private static final Attributes.Name LAUNCHER_AGENT_CLASS = new Attributes.Name("Launcher-Agent-Class");
+
+	private MetaInf() {
+		// NO-OP
+	}
+
+	public static boolean isSignature(String name) {
+		return SIGNATURE_FILE.matcher(name).matches();
+	}
+
+	public static boolean isService(String name) {
+		return name.startsWith(SERVICES) && name.length() > SERVICES.length() && !name.endsWith("/");
+	}
+
+	/**
+	 * @param classNames maps internal class names, such as {@code com/example/Example}
+	 */
+	public static byte[] fixManifest(byte[] content, UnaryOperator<String> classNames) throws IOException {
+		Manifest manifest = new Manifest(new ByteArrayInputStream(content));
+		Attributes main = manifest.getMainAttributes();
+
+		for (Attributes.Name name : new Attributes.Name[] {Attributes.Name.MAIN_CLASS, LAUNCHER_AGENT_CLASS}) {
+			String value = main.getValue(name);
+
+			if (value != null) {
+				main.put(name, mapClassName(value.trim(), classNames));
+			}
+		}
+
+		main.remove(Attributes.Name.SIGNATURE_VERSION);
+
+		for (Iterator<Attributes> entries = manifest.getEntries().values().iterator(); entries.hasNext(); ) {
+			Attributes attributes = entries.next();
+
+			attributes.keySet().removeIf(key -> {
+				String name = key.toString();
+
+				return name.endsWith("-Digest") || name.contains("-Digest-") || name.equals("Magic");
+			});
+
+			if (attributes.isEmpty()) {
+				entries.remove();
+			}
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream(content.length);
+		manifest.write(output);
+
+		return output.toByteArray();
+	}
+
+	/**
+	 * @return the name of a service declaration, which is the name of the service it provides
+	 */
+	public static String fixServiceName(String name, UnaryOperator<String> classNames) {
+		return SERVICES + mapClassName(name.substring(SERVICES.length()), classNames);
+	}
+
+	/**
+	 * Remaps the providers listed in a service declaration, keeping any comments.
+	 */
+	public static byte[] fixService(byte[] content, UnaryOperator<String> classNames) {
+		String[] lines = new String(content, StandardCharsets.UTF_8).split("\r?\n", -1);
+		StringBuilder fixed = new StringBuilder(content.length);
+
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i];
+			int comment = line.indexOf('#');
+			String provider = (comment == -1 ? line : line.substring(0, comment)).trim();
+
+			if (!provider.isEmpty()) {
+				int start = line.indexOf(provider);
+				line = line.substring(0, start) + mapClassName(provider, classNames) + line.substring(start + provider.length());
+			}
+
+			fixed.append(line);
+
+			if (i < lines.length - 1) {
+				fixed.append('\n');
+			}
+		}
+
+		return fixed.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String mapClassName(String binaryName, UnaryOperator<String> classNames) {
+		return classNames.apply(binaryName.replace('.', '/')).replace('/', '.');
+	}
+}
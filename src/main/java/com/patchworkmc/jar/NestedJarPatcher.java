@@ -0,0 +1,324 @@
+package com.patchworkmc.jar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.Level;
+import org.objectweb.asm.ClassReader;
+
+import com.patchworkmc.Diagnostics;
+import com.patchworkmc.MemoryBudget;
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.annotation.AnnotationStorage;
+import com.patchworkmc.mapping.remapper.AsmRemapper;
+import com.patchworkmc.mapping.remapper.PatchworkRemapper;
+import com.patchworkmc.transformer.ClassCache;
+import com.patchworkmc.transformer.ClassHierarchy;
+import com.patchworkmc.transformer.PatchworkTransformer;
+
+/**
+ * Patches the library jars bundled inside of a mod, entirely in memory, so that they can be shipped as Fabric
+ * jar-in-jar entries next to the patched mod.
+ *
+ * <p>Libraries usually have no {@code @Mod} class, so only their classes are remapped and patched: their annotations
+ * are not recorded, and initializers are only generated for a jar that does have one. Jars nested inside of a library
+ * are patched the same way and moved to the {@code META-INF/jars/} folder of that library. Jars that already have a
+ * fabric.mod.json are Fabric mods, and are copied as they are.</p>
+ *
+ * <p>Classes are patched in parallel on the common pool, like the classes of the mod itself, and share its class cache
+ * and memory budget.</p>
+ */
+public class NestedJarPatcher {
+	// Matches a trailing version in a file name, such as the "-1.3.50" of "kotlin-stdlib-1.3.50"
+	private static final Pattern VERSION_SUFFIX = Pattern.compile("^(.+?)[-_]v?(\\d[\\w.+-]*)$");
+	private static final Pattern SIGNATURE_FILE = Pattern.compile("^META-INF/[^/]+\\.(SF|RSA|DSA|EC)$", Pattern.CASE_INSENSITIVE);
+	private static final int CLASS_OVERHEAD = 3;
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+	private final PatchworkRemapper remapper;
+	private final AsmRemapper asmRemapper;
+	private final ClassHierarchy hierarchy;
+	private final ClassCache cache;
+	private final MemoryBudget memoryBudget;
+
+	/**
+	 * @param hierarchy    the hierarchy of the classes outside of the nested jars, or null if there is none
+	 * @param cache        the cache of patched classes, or null if there is none
+	 * @param memoryBudget the budget to take the memory for each class from, or null if there is none
+	 */
+	public NestedJarPatcher(PatchworkRemapper remapper, AsmRemapper asmRemapper, ClassHierarchy hierarchy, ClassCache cache, MemoryBudget memoryBudget) {
+		this.remapper = remapper;
+		this.asmRemapper = asmRemapper;
+		this.hierarchy = hierarchy;
+		this.cache = cache;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * @return whether a zip entry is a jar that should be patched as a nested jar
+	 */
+	public static boolean isNestedJar(String name) {
+		return !name.endsWith("/") && name.toLowerCase(Locale.ROOT).endsWith(".jar");
+	}
+
+	/**
+	 * Patches a nested jar.
+	 *
+	 * @param name     the path of the jar within its parent
+	 * @param jar      the contents of the jar
+	 * @param parentId the mod id of the mod the jar is nested in
+	 */
+	public Result patch(String name, byte[] jar, String parentId) throws IOException {
+		String fileName = name.substring(name.lastIndexOf('/') + 1, name.length() - ".jar".length());
+		List<byte[]> classes = new ArrayList<>();
+		List<Resource> resources = new ArrayList<>();
+		JsonObject fabricModJson = null;
+		Manifest manifest = null;
+
+		try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(jar))) {
+			for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+				String entryName = entry.getName();
+
+				if (entry.isDirectory() || SIGNATURE_FILE.matcher(entryName).matches()) {
+					// The signatures would no longer match the patched classes
+					continue;
+				}
+
+				byte[] data = IOUtils.toByteArray(input);
+
+				if (entryName.endsWith(".class")) {
+					classes.add(data);
+				} else if (entryName.equals("fabric.mod.json")) {
+					fabricModJson = GSON.fromJson(new String(data, StandardCharsets.UTF_8), JsonObject.class);
+				} else {
+					if (entryName.equals("META-INF/MANIFEST.MF")) {
+						manifest = new Manifest(new ByteArrayInputStream(data));
+					}
+
+					resources.add(new Resource(entryName, entry.getTime(), data));
+				}
+			}
+		}
+
+		Result result = new Result(fileName, manifest, fabricModJson, parentId);
+
+		if (result.fabric) {
+			// Already built for Fabric, so its classes are in intermediary and must not be patched
+			Patchwork.LOGGER.info("Copying nested Fabric mod %s (%s) as is", name, result.modId);
+			result.jar = jar;
+
+			return result;
+		}
+
+		JsonArray entrypoints = new JsonArray();
+		Map<String, byte[]> patched = patchClasses(name, classes, entrypoints);
+
+		Patchwork.LOGGER.info("Patched %s classes of nested jar %s as %s", patched.size(), name, result.modId);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(jar.length);
+
+		try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+			Set<String> written = new HashSet<>();
+			// Nested jars are all moved, so any existing list of them is replaced
+			JsonArray jars = new JsonArray();
+
+			for (Resource resource : resources) {
+				if (isNestedJar(resource.name)) {
+					Result inner = patch(resource.name, resource.data, result.modId);
+					String path = getJarPath(inner.modId, written);
+
+					JsonObject file = new JsonObject();
+					file.addProperty("file", path);
+					jars.add(file);
+
+					write(output, path, resource.time, inner.jar);
+				} else {
+					write(output, resource.name, resource.time, resource.data);
+				}
+			}
+
+			if (jars.size() > 0) {
+				result.fabricModJson.add("jars", jars);
+			} else {
+				result.fabricModJson.remove("jars");
+			}
+
+			if (entrypoints.size() > 0) {
+				// Only a jar with an @Mod class has initializers
+				JsonObject entrypointsObject = new JsonObject();
+				entrypointsObject.add("patchwork", entrypoints);
+				result.fabricModJson.add("entrypoints", entrypointsObject);
+			}
+
+			write(output, "fabric.mod.json", -1, GSON.toJson(result.fabricModJson).getBytes(StandardCharsets.UTF_8));
+
+			// Sorted by name, so that the output does not depend on the order the classes were patched in
+			for (Map.Entry<String, byte[]> entry : patched.entrySet()) {
+				write(output, entry.getKey() + ".class", -1, entry.getValue());
+			}
+		}
+
+		result.jar = bytes.toByteArray();
+
+		return result;
+	}
+
+	/**
+	 * @param written the paths of the nested jars already written, which the returned path is added to
+	 * @return the path under {@code META-INF/jars/} to write the jar of a mod to, made unique if two jars have the same
+	 * mod id
+	 */
+	public static String getJarPath(String modId, Set<String> written) {
+		String path = "META-INF/jars/" + modId + ".jar";
+
+		for (int i = 2; !written.add(path); i++) {
+			path = "META-INF/jars/" + modId + "-" + i + ".jar";
+		}
+
+		return path;
+	}
+
+	/**
+	 * @param name        the path of the jar within its parent, for the diagnostics
+	 * @param entrypoints receives the initializers generated for the jar, if it has an {@code @Mod} class
+	 * @return the patched classes, including generated ones, by name
+	 */
+	private Map<String, byte[]> patchClasses(String name, List<byte[]> classes, JsonArray entrypoints) {
+		Map<String, byte[]> patched = new ConcurrentSkipListMap<>();
+		PatchworkTransformer transformer = new PatchworkTransformer(patched::put, remapper, new AnnotationStorage(), hierarchy);
+		Diagnostics diagnostics = transformer.getDiagnostics();
+		transformer.setCache(cache);
+
+		classes.parallelStream().forEach(content -> {
+			try (MemoryBudget.Ticket ticket = memoryBudget == null ? null : memoryBudget.acquireUninterruptibly(content.length * CLASS_OVERHEAD)) {
+				transformer.acceptUnmapped(content, asmRemapper);
+			} catch (RuntimeException ex) {
+				// A single class that can't be patched shouldn't take the whole mod down with it
+				String className = new ClassReader(content).getClassName();
+
+				diagnostics.report(Level.ERROR, "Could not patch %s, copying it as is: %s", className, ex);
+				patched.put(className, content);
+			}
+		});
+
+		transformer.finishLibrary(entrypoints::add);
+		diagnostics.summarize(name);
+
+		return patched;
+	}
+
+	private static void write(ZipOutputStream output, String name, long time, byte[] data) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+
+		if (time != -1) {
+			entry.setTime(time);
+		}
+
+		output.putNextEntry(entry);
+		output.write(data);
+		output.closeEntry();
+	}
+
+	/**
+	 * Makes a valid Fabric mod id out of the name of a jar, such as {@code kotlin-stdlib} for
+	 * {@code kotlin-stdlib-1.3.50}.
+	 */
+	static String toModId(String name) {
+		String id = name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_-]", "_");
+
+		if (id.length() < 2 || !Character.isLetter(id.charAt(0))) {
+			id = "lib_" + id;
+		}
+
+		return id.length() > 64 ? id.substring(0, 64) : id;
+	}
+
+	private static class Resource {
+		private final String name;
+		private final long time;
+		private final byte[] data;
+
+		private Resource(String name, long time, byte[] data) {
+			this.name = name;
+			this.time = time;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * A patched nested jar.
+	 */
+	public static class Result {
+		private final String modId;
+		private final JsonObject fabricModJson;
+		// Whether the jar is already a Fabric mod, which is left as it is
+		private final boolean fabric;
+		private byte[] jar;
+
+		private Result(String fileName, Manifest manifest, JsonObject fabricModJson, String parentId) {
+			this.fabric = fabricModJson != null && fabricModJson.has("id");
+
+			if (fabric) {
+				this.modId = fabricModJson.getAsJsonPrimitive("id").getAsString();
+				this.fabricModJson = fabricModJson;
+
+				return;
+			}
+
+			// Name the library after the jar without its version, so that Fabric only loads the newest copy of a library
+			// that more than one mod bundles
+			Matcher matcher = VERSION_SUFFIX.matcher(fileName);
+			String baseName = matcher.matches() ? matcher.group(1) : fileName;
+			String version = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.IMPLEMENTATION_VERSION);
+
+			if (version == null) {
+				version = matcher.matches() ? matcher.group(2) : "0.0.0";
+			}
+
+			this.modId = toModId(baseName);
+			this.fabricModJson = new JsonObject();
+
+			JsonObject custom = new JsonObject();
+			custom.addProperty("modmenu:parent", parentId);
+			custom.addProperty("patchwork:parent", parentId);
+
+			this.fabricModJson.addProperty("schemaVersion", 1);
+			this.fabricModJson.addProperty("id", modId);
+			this.fabricModJson.addProperty("version", version);
+			this.fabricModJson.addProperty("name", fileName);
+			this.fabricModJson.add("custom", custom);
+		}
+
+		public String getModId() {
+			return modId;
+		}
+
+		/**
+		 * @return the patched jar, with a fabric.mod.json
+		 */
+		public byte[] getJar() {
+			return jar;
+		}
+	}
+}
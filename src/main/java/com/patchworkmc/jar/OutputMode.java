@@ -0,0 +1,73 @@
+package com.patchworkmc.jar;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import com.patchworkmc.MemoryBudget;
+
+/**
+ * How patched mods are written to the output folder.
+ *
+ * <p>The mode picks the {@link JarOutput} a mod is patched into, so patched classes and resources are written in the
+ * selected form directly.</p>
+ */
+public enum OutputMode {
+	/**
+	 * A jar with patched classes deflated, and resources compressed the way they were in the mod jar.
+	 */
+	JAR,
+	/**
+	 * A jar with every entry stored without compression, which is the fastest to write and to load.
+	 */
+	STORED,
+	/**
+	 * A jar with every entry deflated at the level set by the {@code patchwork:deflate_level} system property.
+	 */
+	DEFLATED,
+	/**
+	 * The entries of the jar written as plain files into a directory with the same name, minus the .jar extension.
+	 */
+	DIRECTORY;
+
+	/**
+	 * @return the mode selected by the {@code patchwork:output_mode} system property, or {@link #JAR} if unset
+	 */
+	public static OutputMode fromProperties() {
+		return valueOf(System.getProperty("patchwork:output_mode", "jar").toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return where the output of a mod patched to the given jar path is written
+	 */
+	public Path getOutputPath(Path jar) {
+		if (this != DIRECTORY) {
+			return jar;
+		}
+
+		String name = jar.getFileName().toString();
+
+		return jar.resolveSibling(name.endsWith(".jar") ? name.substring(0, name.length() - 4) : name);
+	}
+
+	/**
+	 * Opens the output of a mod patched to the given jar path, replacing any older output there.
+	 *
+	 * @param memoryBudget charged for the entries waiting to be compressed, or null if there is no budget
+	 */
+	public JarOutput open(Path jar, MemoryBudget memoryBudget) throws IOException {
+		switch (this) {
+		case STORED:
+			return new ParallelZipWriter(jar, ZipEntry.STORED, Deflater.NO_COMPRESSION, true, memoryBudget);
+		case DEFLATED:
+			return new ParallelZipWriter(jar, ZipEntry.DEFLATED, Integer.getInteger("patchwork:deflate_level", Deflater.DEFAULT_COMPRESSION), true, memoryBudget);
+		case DIRECTORY:
+			return new DirectoryWriter(getOutputPath(jar));
+		default:
+			// Resources keep the compression they had in the mod jar
+			return new ParallelZipWriter(jar, ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION, false, memoryBudget);
+		}
+	}
+}
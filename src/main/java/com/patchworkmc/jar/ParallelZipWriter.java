@@ -0,0 +1,337 @@
+package com.patchworkmc.jar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import com.patchworkmc.MemoryBudget;
+
+/**
+ * Writes a zip file with its entries compressed on a pool of threads. Entries may be added from several threads at
+ * once, such as the threads patching the classes of a mod, which makes this usable as the output of
+ * {@link com.patchworkmc.transformer.PatchworkTransformer}.
+ *
+ * <p>Entries are spooled to a temporary zip next to the output as they are finished, and copied from there sorted by
+ * name once the writer is closed, so the output is the same whichever thread finishes first. The manifest comes first,
+ * like in jars written by the jar tool. A writer to a channel spools in memory instead, so it never touches the
+ * disk.</p>
+ *
+ * <p>Only a limited number of entries wait to be compressed at once, and with a {@link MemoryBudget}, only as many bytes
+ * as it has to spare. Past that, the thread adding an entry compresses it itself instead, which also keeps a thread of
+ * the pool from waiting on work queued behind it. Waiting entries are charged to the budget rather than blocking on it,
+ * since the threads adding entries usually hold part of the budget already.</p>
+ */
+public class ParallelZipWriter implements JarOutput {
+	private static final Comparator<String> ENTRY_ORDER = Comparator.<String, Boolean>comparing(name -> !name.equals("META-INF/"))
+			.thenComparing(name -> !name.equals(MetaInf.MANIFEST))
+			.thenComparing(Comparator.naturalOrder());
+
+	// Either the output is a file spooled to a temporary file, or a channel spooled in memory
+	private final Path path;
+	private final Path spool;
+	private final WritableByteChannel channel;
+	private final ByteArrayOutputStream spoolBytes;
+	private final RawZipWriter writer;
+	private final int method;
+	private final int level;
+	private final boolean recompress;
+	private final MemoryBudget memoryBudget;
+	private final long time = System.currentTimeMillis();
+	private final Executor executor;
+	private final int maxPending;
+	private final AtomicInteger pending = new AtomicInteger();
+	// Has a party for the writer itself, and one for each entry being compressed in the background
+	private final Phaser compressing = new Phaser(1);
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private final ThreadLocal<Deflater> deflaters;
+	private final Queue<Deflater> allDeflaters = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * @param method either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+	 * @param level  the deflate level, which is ignored for stored entries
+	 */
+	public ParallelZipWriter(Path path, int method, int level) throws IOException {
+		this(path, method, level, false, null);
+	}
+
+	/**
+	 * @param recompress   whether copied entries are compressed again with the method and level of this writer, instead
+	 *                     of being copied as they are
+	 * @param memoryBudget charged for the entries waiting to be compressed, or null to only limit how many wait
+	 */
+	public ParallelZipWriter(Path path, int method, int level, boolean recompress, MemoryBudget memoryBudget) throws IOException {
+		this(path, method, level, recompress, memoryBudget, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism() * 4);
+	}
+
+	public ParallelZipWriter(Path path, int method, int level, boolean recompress, MemoryBudget memoryBudget, Executor executor, int maxPending) throws IOException {
+		this(path, Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp"), null, null, method, level, recompress, memoryBudget, executor, maxPending);
+	}
+
+	/**
+	 * Writes a zip file to a channel, which is left open once the zip file is finished. See
+	 * {@link #ParallelZipWriter(Path, int, int, boolean, MemoryBudget)}.
+	 */
+	public ParallelZipWriter(WritableByteChannel channel, int method, int level, boolean recompress, MemoryBudget memoryBudget) throws IOException {
+		this(null, null, channel, new ByteArrayOutputStream(), method, level, recompress, memoryBudget, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism() * 4);
+	}
+
+	private ParallelZipWriter(Path path, Path spool, WritableByteChannel channel, ByteArrayOutputStream spoolBytes, int method, int level, boolean recompress, MemoryBudget memoryBudget, Executor executor, int maxPending) throws IOException {
+		this.path = path;
+		this.spool = spool;
+		this.channel = channel;
+		this.spoolBytes = spoolBytes;
+		this.writer = spool != null ? new RawZipWriter(spool) : new RawZipWriter(Channels.newChannel(spoolBytes));
+		this.method = method;
+		this.level = level;
+		this.recompress = recompress;
+		this.memoryBudget = memoryBudget;
+		this.executor = executor;
+		this.maxPending = Math.max(1, maxPending);
+		// Deflaters hold native memory, so each thread reuses its own instead of creating one per entry
+		this.deflaters = ThreadLocal.withInitial(() -> {
+			Deflater deflater = new Deflater(level, true);
+			allDeflaters.add(deflater);
+
+			return deflater;
+		});
+	}
+
+	/**
+	 * Adds an entry, compressing it in the background if not too many entries are waiting already. This may be called
+	 * from any thread.
+	 *
+	 * @param time the modification time of the entry, in milliseconds since the epoch
+	 */
+	@Override
+	public void add(String name, long time, byte[] data) throws IOException {
+		checkFailure();
+
+		MemoryBudget.Ticket ticket = null;
+
+		if (pending.incrementAndGet() > maxPending || (memoryBudget != null && (ticket = memoryBudget.tryAcquire(data.length)) == null)) {
+			try {
+				write(compress(name, time, data));
+			} finally {
+				pending.decrementAndGet();
+			}
+
+			return;
+		}
+
+		MemoryBudget.Ticket waiting = ticket;
+		compressing.register();
+
+		CompletableFuture.runAsync(() -> {
+			try {
+				write(compress(name, time, data));
+			} catch (Throwable ex) {
+				failure.compareAndSet(null, ex);
+			} finally {
+				if (waiting != null) {
+					waiting.close();
+				}
+
+				pending.decrementAndGet();
+				compressing.arriveAndDeregister();
+			}
+		}, executor);
+	}
+
+	/**
+	 * Adds an entry with the time the writer was created as its modification time.
+	 *
+	 * @throws UncheckedIOException if the entry could not be written
+	 */
+	@Override
+	public void accept(String name, byte[] data) {
+		try {
+			add(name, time, data);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Copies an entry of another zip file as it is, still compressed with the method it was compressed with there,
+	 * unless this writer recompresses copied entries.
+	 */
+	@Override
+	public void copy(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+		checkFailure();
+
+		// A stored entry stays the same when it is stored again
+		if (recompress && !(method == ZipEntry.STORED && entry.getMethod() == ZipEntry.STORED)) {
+			add(entry.getName(), entry.getTime(), source.readContent(entry));
+			return;
+		}
+
+		synchronized (writer) {
+			writer.copy(source, entry);
+		}
+	}
+
+	/**
+	 * Opens an entry that is compressed as it is written, for data that is too large to build as a whole first. Only
+	 * the compressed data is held in memory, until the stream is closed and the entry is written.
+	 */
+	@Override
+	public OutputStream openEntry(String name) throws IOException {
+		checkFailure();
+
+		return new EntryStream(name);
+	}
+
+	private CompressedEntry compress(String name, long time, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		if (method == ZipEntry.STORED) {
+			return new CompressedEntry(name, time, data, crc.getValue(), data.length);
+		}
+
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+		byte[] buffer = new byte[8192];
+
+		while (!deflater.finished()) {
+			int length = deflater.deflate(buffer);
+			output.write(buffer, 0, length);
+		}
+
+		return new CompressedEntry(name, time, output.toByteArray(), crc.getValue(), data.length);
+	}
+
+	private void write(CompressedEntry entry) throws IOException {
+		synchronized (writer) {
+			writer.write(entry.name, entry.time, method, entry.data, entry.crc, entry.size);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable ex = failure.get();
+
+		if (ex != null) {
+			throw new IOException("Failed to compress a zip entry", ex);
+		}
+	}
+
+	/**
+	 * Waits for every entry to be compressed, then writes them all to the output sorted by name. Nothing is written to
+	 * the output if any entry failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			try {
+				compressing.arriveAndAwaitAdvance();
+				checkFailure();
+			} finally {
+				writer.close();
+				allDeflaters.forEach(Deflater::end);
+			}
+
+			try (RawZipFile spooled = spool != null ? new RawZipFile(spool) : new RawZipFile(spoolBytes.toByteArray());
+					RawZipWriter output = path != null ? new RawZipWriter(path) : new RawZipWriter(channel)) {
+				List<RawZipFile.Entry> entries = new ArrayList<>(spooled.getEntries());
+				entries.sort(Comparator.comparing(RawZipFile.Entry::getName, ENTRY_ORDER));
+
+				for (RawZipFile.Entry entry : entries) {
+					output.copy(spooled, entry);
+				}
+			}
+		} finally {
+			if (spool != null) {
+				Files.deleteIfExists(spool);
+			}
+		}
+	}
+
+	private class EntryStream extends OutputStream {
+		private final String name;
+		private final CRC32 crc = new CRC32();
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		private final Deflater deflater;
+		private final OutputStream output;
+		private long size;
+		private boolean closed;
+
+		private EntryStream(String name) {
+			this.name = name;
+			this.deflater = method == ZipEntry.STORED ? null : new Deflater(level, true);
+			this.output = deflater == null ? data : new DeflaterOutputStream(data, deflater);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			crc.update(b);
+			size++;
+			output.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			crc.update(b, off, len);
+			size += len;
+			output.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+
+			try {
+				output.close();
+			} finally {
+				if (deflater != null) {
+					deflater.end();
+				}
+			}
+
+			ParallelZipWriter.this.write(new CompressedEntry(name, time, data.toByteArray(), crc.getValue(), size));
+		}
+	}
+
+	private static class CompressedEntry {
+		private final String name;
+		private final long time;
+		private final byte[] data;
+		private final long crc;
+		private final long size;
+
+		private CompressedEntry(String name, long time, byte[] data, long crc, long size) {
+			this.name = name;
+			this.time = time;
+			this.data = data;
+			this.crc = crc;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package com.patchworkmc.jar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip file, so that its entries can be copied to a {@link RawZipWriter} still
+ * compressed, without inflating and deflating them again. The contents of an entry can also be read on their own, from
+ * several threads at once. The zip file may be on disk or held in memory.
+ *
+ * <p>Zip64 and multi-disk archives are not supported.</p>
+ */
+public class RawZipFile implements Closeable {
+	static final int LOCAL_HEADER = 0x04034b50;
+	static final int CENTRAL_HEADER = 0x02014b50;
+	static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+	// Where the zip file came from, for error messages
+	private final String source;
+	// Exactly one of these is set, depending on whether the zip file is on disk or in memory
+	private final FileChannel channel;
+	private final ByteBuffer content;
+	private final List<Entry> entries;
+
+	public RawZipFile(Path path) throws IOException {
+		this.source = path.toString();
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.content = null;
+
+		try {
+			this.entries = Collections.unmodifiableList(readCentralDirectory());
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	public RawZipFile(byte[] content) throws IOException {
+		this.source = "a zip file in memory";
+		this.channel = null;
+		this.content = ByteBuffer.wrap(content).asReadOnlyBuffer();
+		this.entries = Collections.unmodifiableList(readCentralDirectory());
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Writes the compressed data of an entry to a channel as it is.
+	 */
+	void transferTo(Entry entry, WritableByteChannel target) throws IOException {
+		long position = getDataOffset(entry);
+
+		if (content != null) {
+			ByteBuffer data = read(position, (int) entry.compressedSize);
+
+			while (data.hasRemaining()) {
+				target.write(data);
+			}
+
+			return;
+		}
+
+		long remaining = entry.compressedSize;
+
+		while (remaining > 0) {
+			long transferred = channel.transferTo(position, remaining, target);
+
+			if (transferred <= 0) {
+				throw new ZipException("Unexpected end of the data of " + entry.name + " in " + source);
+			}
+
+			position += transferred;
+			remaining -= transferred;
+		}
+	}
+
+	/**
+	 * Reads and inflates the contents of an entry.
+	 */
+	public byte[] readContent(Entry entry) throws IOException {
+		if (entry.size > Integer.MAX_VALUE - 8 || entry.compressedSize > Integer.MAX_VALUE - 8) {
+			throw new ZipException("Entry too large to read into memory: " + entry.name + " in " + source);
+		}
+
+		ByteBuffer data = read(getDataOffset(entry), (int) entry.compressedSize);
+
+		if (entry.getMethod() == ZipEntry.STORED) {
+			return data.array();
+		}
+
+		if (entry.getMethod() != ZipEntry.DEFLATED) {
+			throw new ZipException("Unsupported compression method " + entry.getMethod() + " of " + entry.name + " in " + source);
+		}
+
+		Inflater inflater = new Inflater(true);
+		byte[] content = new byte[(int) entry.size];
+
+		try {
+			// Raw inflation may need one byte of input past the end of the data
+			byte[] input = new byte[data.capacity() + 1];
+			System.arraycopy(data.array(), 0, input, 0, data.capacity());
+			inflater.setInput(input);
+
+			int length = 0;
+
+			while (length < content.length) {
+				int inflated = inflater.inflate(content, length, content.length - length);
+
+				if (inflated == 0 && (inflater.finished() || inflater.needsDictionary())) {
+					break;
+				}
+
+				length += inflated;
+			}
+
+			if (length != content.length) {
+				throw new ZipException("Truncated data of " + entry.name + " in " + source);
+			}
+		} catch (DataFormatException ex) {
+			throw new ZipException("Bad compressed data of " + entry.name + " in " + source + ": " + ex.getMessage());
+		} finally {
+			inflater.end();
+		}
+
+		return content;
+	}
+
+	/**
+	 * Finds where the compressed data of an entry starts, which depends on the local header rather than the central one.
+	 */
+	long getDataOffset(Entry entry) throws IOException {
+		ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+
+		if (header.getInt(0) != LOCAL_HEADER) {
+			throw new ZipException("Bad local header for " + entry.name + " in " + source);
+		}
+
+		int nameLength = Short.toUnsignedInt(header.getShort(26));
+		int extraLength = Short.toUnsignedInt(header.getShort(28));
+
+		return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+	}
+
+	private List<Entry> readCentralDirectory() throws IOException {
+		long size = channel != null ? channel.size() : content.capacity();
+		// The end of central directory record is followed by a comment of at most 65535 bytes
+		int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+		ByteBuffer tail = read(size - tailLength, tailLength);
+		int end = -1;
+
+		for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+				end = i;
+				break;
+			}
+		}
+
+		if (end == -1) {
+			throw new ZipException("No end of central directory found in " + source);
+		}
+
+		int count = Short.toUnsignedInt(tail.getShort(end + 10));
+		long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+		long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+		if (count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+			throw new ZipException("Zip64 archives are not supported: " + source);
+		}
+
+		ByteBuffer directory = read(directoryOffset, (int) directorySize);
+		List<Entry> result = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			int start = directory.position();
+
+			if (directory.getInt(start) != CENTRAL_HEADER) {
+				throw new ZipException("Bad central directory header in " + source);
+			}
+
+			int nameLength = Short.toUnsignedInt(directory.getShort(start + 28));
+			int extraLength = Short.toUnsignedInt(directory.getShort(start + 30));
+			int commentLength = Short.toUnsignedInt(directory.getShort(start + 32));
+			byte[] header = new byte[CENTRAL_HEADER_SIZE];
+			byte[] name = new byte[nameLength];
+
+			directory.get(header);
+			directory.get(name);
+			directory.position(directory.position() + extraLength + commentLength);
+
+			Entry entry = new Entry(header, name);
+
+			if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.localHeaderOffset == 0xFFFFFFFFL) {
+				throw new ZipException("Zip64 entries are not supported: " + entry.name + " in " + source);
+			}
+
+			result.add(entry);
+		}
+
+		return result;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		if (content != null) {
+			if (position < 0 || position + length > content.capacity()) {
+				throw new ZipException("Unexpected end of " + source);
+			}
+
+			ByteBuffer slice = content.duplicate();
+			slice.position((int) position).limit((int) position + length);
+			buffer.put(slice);
+		} else {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new ZipException("Unexpected end of " + source);
+				}
+			}
+		}
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * An entry of the central directory. The fixed size part of the header is kept as is, so that it can be written
+	 * back out unchanged apart from the offset.
+	 */
+	public static class Entry {
+		final byte[] header;
+		final byte[] rawName;
+		final String name;
+		final long compressedSize;
+		final long size;
+		final long localHeaderOffset;
+
+		private Entry(byte[] header, byte[] rawName) {
+			ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+
+			this.header = header;
+			this.rawName = rawName;
+			// Entry names are UTF-8 in every jar that matters, and plain ASCII in nearly all of them
+			this.name = new String(rawName, StandardCharsets.UTF_8);
+			this.compressedSize = Integer.toUnsignedLong(buffer.getInt(20));
+			this.size = Integer.toUnsignedLong(buffer.getInt(24));
+			this.localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(42));
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the compression method of the entry, such as {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+		 */
+		public int getMethod() {
+			return Short.toUnsignedInt(ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getShort(10));
+		}
+
+		/**
+		 * @return the modification time of the entry, in milliseconds since the epoch
+		 */
+		public long getTime() {
+			ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+			int time = Short.toUnsignedInt(buffer.getShort(12));
+			int date = Short.toUnsignedInt(buffer.getShort(14));
+
+			try {
+				LocalDateTime dateTime = LocalDateTime.of(1980 + (date >> 9), (date >> 5) & 0xF, date & 0x1F,
+						time >> 11, (time >> 5) & 0x3F, (time & 0x1F) * 2);
+
+				return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			} catch (RuntimeException ex) {
+				// Not a valid date, such as the zeroes some tools write
+				return LocalDateTime.of(1980, 1, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			}
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.patchworkmc.jar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip file out of entries copied from {@link RawZipFile}s, or compressed ahead of time. The compressed data of
+ * copied entries is transferred between the files as is, along with its CRC and sizes, so nothing is inflated or
+ * deflated.
+ *
+ * <p>Entries with a name that was already written are skipped.</p>
+ */
+public class RawZipWriter implements Closeable {
+	// Set in the general purpose flags when the CRC and sizes follow the data instead of being in the local header
+	private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+	// Set in the general purpose flags when the name of the entry is UTF-8
+	private static final int UTF8_FLAG = 1 << 11;
+
+	private final WritableByteChannel channel;
+	private final boolean ownsChannel;
+	private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+	private final Set<String> names = new HashSet<>();
+	private int count;
+	// Tracked here rather than asked of the channel, which may not be seekable
+	private long position;
+
+	public RawZipWriter(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), true);
+	}
+
+	/**
+	 * Writes a zip file to a channel, starting at its current position. The channel is left open once the zip file is
+	 * finished.
+	 */
+	public RawZipWriter(WritableByteChannel channel) {
+		this(channel, false);
+	}
+
+	private RawZipWriter(WritableByteChannel channel, boolean ownsChannel) {
+		this.channel = channel;
+		this.ownsChannel = ownsChannel;
+	}
+
+	/**
+	 * @return whether the entry was written, which is not the case if an entry with the same name already was
+	 */
+	public boolean copy(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+		if (!names.add(entry.name)) {
+			return false;
+		}
+
+		ByteBuffer central = ByteBuffer.wrap(entry.header.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		// The sizes are always written to the local header, so there is never a data descriptor
+		central.putShort(8, (short) (central.getShort(8) & ~DATA_DESCRIPTOR_FLAG));
+		// Extra fields and comments are dropped, since they are only ever timestamps and alignment
+		central.putShort(30, (short) 0);
+		central.putShort(32, (short) 0);
+
+		writeHeaders(central, entry.rawName);
+		source.transferTo(entry, channel);
+		position += entry.compressedSize;
+
+		return true;
+	}
+
+	/**
+	 * Writes an entry whose data has already been compressed, or is stored.
+	 *
+	 * @param name   the name of the entry
+	 * @param time   the modification time of the entry, in milliseconds since the epoch
+	 * @param method either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}, for raw deflate data without a zlib
+	 *               header
+	 * @param data   the data of the entry, as it should appear in the file
+	 * @param crc    the CRC-32 of the uncompressed data
+	 * @param size   the size of the uncompressed data
+	 * @return whether the entry was written, which is not the case if an entry with the same name already was
+	 */
+	public boolean write(String name, long time, int method, byte[] data, long crc, long size) throws IOException {
+		if (!names.add(name)) {
+			return false;
+		}
+
+		byte[] rawName = name.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer central = ByteBuffer.allocate(RawZipFile.CENTRAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		central.putInt(RawZipFile.CENTRAL_HEADER);
+		central.putShort((short) 20); // Version made by
+		central.putShort((short) (method == ZipEntry.STORED ? 10 : 20)); // Version needed to extract
+		central.putShort((short) UTF8_FLAG);
+		central.putShort((short) method);
+		central.putInt(toDosTime(time));
+		central.putInt((int) crc);
+		central.putInt(data.length);
+		central.putInt((int) size);
+		central.putShort((short) rawName.length);
+
+		writeHeaders(central, rawName);
+		write(ByteBuffer.wrap(data));
+
+		return true;
+	}
+
+	/**
+	 * Writes the local header of an entry, and adds its central header to the central directory.
+	 *
+	 * @param central the central header, with everything but the offset of the local header filled in
+	 */
+	private void writeHeaders(ByteBuffer central, byte[] rawName) throws IOException {
+		if (count == 0xFFFF) {
+			throw new ZipException("Too many entries for a zip file without Zip64 support");
+		}
+
+		long offset = position;
+
+		if (offset > 0xFFFFFFFFL) {
+			throw new ZipException("Zip file too large without Zip64 support");
+		}
+
+		central.putInt(42, (int) offset);
+
+		ByteBuffer local = ByteBuffer.allocate(RawZipFile.LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		local.putInt(RawZipFile.LOCAL_HEADER);
+		// Version needed, flags, method, time, date, CRC, compressed size and size are in the same order in both headers,
+		// at 6 to 28 in the central header and 4 to 26 in the local one
+		local.put(central.array(), 6, 22);
+		local.putShort(26, (short) rawName.length);
+		local.putShort(28, (short) 0);
+		local.rewind();
+
+		write(local);
+		write(ByteBuffer.wrap(rawName));
+
+		centralDirectory.write(central.array());
+		centralDirectory.write(rawName);
+		count++;
+	}
+
+	private static int toDosTime(long time) {
+		LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+
+		if (date.getYear() < 1980) {
+			// The earliest time that can be represented
+			return (1 << 21) | (1 << 16);
+		}
+
+		return (date.getYear() - 1980) << 25 | date.getMonthValue() << 21 | date.getDayOfMonth() << 16
+				| date.getHour() << 11 | date.getMinute() << 5 | date.getSecond() >> 1;
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Writes the central directory, and closes the file if this writer opened it.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			long offset = position;
+
+			if (offset > 0xFFFFFFFFL) {
+				throw new ZipException("Zip file too large without Zip64 support");
+			}
+
+			write(ByteBuffer.wrap(centralDirectory.toByteArray()));
+
+			ByteBuffer end = ByteBuffer.allocate(RawZipFile.END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(RawZipFile.END_OF_CENTRAL_DIRECTORY);
+			end.putShort((short) 0);
+			end.putShort((short) 0);
+			end.putShort((short) count);
+			end.putShort((short) count);
+			end.putInt(centralDirectory.size());
+			end.putInt((int) offset);
+			end.putShort((short) 0);
+			end.flip();
+
+			write(end);
+		} finally {
+			if (ownsChannel) {
+				channel.close();
+			}
+		}
+	}
+}
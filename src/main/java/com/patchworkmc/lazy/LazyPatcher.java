@@ -0,0 +1,182 @@
+package com.patchworkmc.lazy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.ClassReader;
+
+import net.fabricmc.tinyremapper.TinyUtils;
+
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.annotation.AnnotationStorage;
+import com.patchworkmc.mapping.remapper.AsmRemapper;
+import com.patchworkmc.mapping.remapper.PatchworkRemapper;
+import com.patchworkmc.transformer.ClassCache;
+import com.patchworkmc.transformer.ConstantPoolScanner;
+import com.patchworkmc.transformer.ConstantPoolScanner.Stage;
+import com.patchworkmc.transformer.PatchworkTransformer;
+
+/**
+ * Patches classes when they are loaded rather than ahead of time.
+ *
+ * <p>With the {@code patchwork:lazy_patching} system property set to true, only the classes of a mod that add to its
+ * metadata (an {@code @Mod} class, annotations, object holders and event subscribers) are patched ahead of time, as
+ * the fabric.mod.json, initializer and shims are generated from them. Every other class is copied into the patched jar
+ * as is, and listed in {@link #INDEX}. Those classes are remapped and patched by this class once they are loaded,
+ * either by {@link LazyPatchingAgent} or by {@link LazyPatchingClassLoader}.</p>
+ *
+ * <p>Patched classes are stored in a {@link ClassCache}, so each class is only patched once across launches.</p>
+ */
+public class LazyPatcher {
+	/**
+	 * The entry of a patched jar listing the internal names of the classes left for this class to patch, one per line.
+	 */
+	public static final String INDEX = "META-INF/patchwork/lazy-classes.txt";
+
+	// These stages find what the metadata of the mod is generated from, so they can't wait until the class is loaded
+	private static final Set<Stage> EAGER_STAGES = EnumSet.of(Stage.ANNOTATIONS, Stage.OBJECT_HOLDERS, Stage.EVENT_HANDLERS);
+
+	private final PatchworkRemapper remapper;
+	private final AsmRemapper asmRemapper;
+	private final ClassCache cache;
+	private final Map<String, Set<String>> indices = new ConcurrentHashMap<>();
+
+	/**
+	 * @param remapper the remapper from srg to intermediary
+	 * @param cache    the cache to store patched classes in, or null to patch classes on every load
+	 */
+	public LazyPatcher(PatchworkRemapper remapper, ClassCache cache) {
+		this.remapper = remapper;
+		this.asmRemapper = new AsmRemapper(remapper);
+		this.cache = cache;
+	}
+
+	/**
+	 * Creates a patcher from the data directory of Patchwork, using the bridged mappings it generates and caching
+	 * classes in the same place as {@link ClassCache#fromProperties}.
+	 */
+	public static LazyPatcher fromDataDir(Path dataDir) {
+		Path mappings = dataDir.resolve("mappings/voldemap-bridged-" + Patchwork.getMinecraftVersion() + ".tiny");
+		PatchworkRemapper remapper = new PatchworkRemapper(TinyUtils.createTinyMappingProvider(mappings, "srg", "intermediary"));
+		long maxMemoryBytes = Long.getLong("patchwork:class_cache_memory_mb", 64) * 1024 * 1024;
+		long maxDiskBytes = Long.getLong("patchwork:class_cache_disk_mb", 512) * 1024 * 1024;
+
+		return new LazyPatcher(remapper, new ClassCache(dataDir.resolve("cache/classes"), maxMemoryBytes, maxDiskBytes, remapper));
+	}
+
+	/**
+	 * @param content the original bytes of a class
+	 * @return whether the class can be left unpatched until it is loaded
+	 */
+	public static boolean canDefer(byte[] content, PatchworkRemapper remapper) {
+		EnumSet<Stage> stages = ConstantPoolScanner.scan(content, new ClassReader(content), remapper.getNaiveRemapper());
+
+		return Collections.disjoint(stages, EAGER_STAGES);
+	}
+
+	/**
+	 * Remaps and patches a class that was left for this class to patch. Anything reported while patching it is logged
+	 * right away, as the class is patched on its own rather than as part of a mod.
+	 *
+	 * @param content the original bytes of the class
+	 * @return the patched bytes of the class
+	 */
+	public byte[] patch(byte[] content) {
+		String[] name = new String[1];
+		byte[][] patched = new byte[1][];
+
+		// Deferred classes never need shims, so the class itself is the only thing the transformer outputs
+		PatchworkTransformer transformer = new PatchworkTransformer((patchedName, bytes) -> {
+			name[0] = patchedName;
+			patched[0] = bytes;
+		}, remapper, new AnnotationStorage());
+		transformer.setCache(cache);
+		transformer.acceptUnmapped(content, asmRemapper);
+		transformer.getDiagnostics().summarize(name[0]);
+
+		return patched[0];
+	}
+
+	/**
+	 * @param location the jar or directory classes are loaded from, as in {@link java.security.CodeSource#getLocation()}
+	 * @return the internal names of the classes of the location that are patched on load, empty if there are none
+	 */
+	public Set<String> getDeferredClasses(URL location) {
+		return indices.computeIfAbsent(location.toString(), key -> {
+			try {
+				return readIndex(Paths.get(location.toURI()));
+			} catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+				// Not a patched jar, or not a file at all, such as a jar nested in another
+				return Collections.emptySet();
+			}
+		});
+	}
+
+	private static Set<String> readIndex(Path location) throws IOException {
+		if (Files.isDirectory(location)) {
+			Path index = location.resolve(INDEX);
+
+			if (!Files.exists(index)) {
+				return Collections.emptySet();
+			}
+
+			try (InputStream stream = Files.newInputStream(index)) {
+				return readIndex(stream);
+			}
+		}
+
+		try (ZipFile jar = new ZipFile(location.toFile())) {
+			ZipEntry index = jar.getEntry(INDEX);
+
+			if (index == null) {
+				return Collections.emptySet();
+			}
+
+			try (InputStream stream = jar.getInputStream(index)) {
+				return readIndex(stream);
+			}
+		}
+	}
+
+	private static Set<String> readIndex(InputStream stream) throws IOException {
+		Set<String> classes = new HashSet<>();
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (!line.isEmpty()) {
+					classes.add(line);
+				}
+			}
+		}
+
+		return classes;
+	}
+
+	/**
+	 * @return the contents of {@link #INDEX} for the given classes
+	 */
+	public static byte[] writeIndex(Collection<String> classes) {
+		StringBuilder index = new StringBuilder();
+
+		classes.stream().sorted().forEach(name -> index.append(name).append('\n'));
+
+		return index.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,65 @@
+package com.patchworkmc.lazy;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+
+import org.apache.logging.log4j.Level;
+
+import com.patchworkmc.Patchwork;
+
+/**
+ * A Java agent that patches the classes of lazily patched mods as they are loaded, see {@link LazyPatcher}.
+ *
+ * <p>Started with {@code -javaagent:patchwork-patcher.jar=<data directory>}, where the data directory is the one
+ * Patchwork patched the mods with, {@code data} by default.</p>
+ */
+public class LazyPatchingAgent implements ClassFileTransformer {
+	private final LazyPatcher patcher;
+
+	public LazyPatchingAgent(LazyPatcher patcher) {
+		this.patcher = patcher;
+	}
+
+	public static void premain(String args, Instrumentation instrumentation) {
+		String dataDir = args == null || args.isEmpty() ? "data" : args;
+
+		Patchwork.LOGGER.info("Lazily patching classes with the data directory %s", dataDir);
+
+		instrumentation.addTransformer(new LazyPatchingAgent(LazyPatcher.fromDataDir(Paths.get(dataDir))));
+	}
+
+	public static void agentmain(String args, Instrumentation instrumentation) {
+		premain(args, instrumentation);
+	}
+
+	@Override
+	public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+		// Redefined classes have already been patched when they were first loaded
+		if (className == null || classBeingRedefined != null || protectionDomain == null) {
+			return null;
+		}
+
+		CodeSource codeSource = protectionDomain.getCodeSource();
+
+		if (codeSource == null || codeSource.getLocation() == null) {
+			return null;
+		}
+
+		if (!patcher.getDeferredClasses(codeSource.getLocation()).contains(className)) {
+			return null;
+		}
+
+		try {
+			return patcher.patch(classfileBuffer);
+		} catch (RuntimeException ex) {
+			// The JVM silently drops exceptions thrown by transformers, so at least make sure they are seen
+			Patchwork.LOGGER.error("Failed to patch %s on load", className);
+			Patchwork.LOGGER.throwing(Level.ERROR, ex);
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.patchworkmc.lazy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A class loader over patched mods that patches their deferred classes as they are loaded, see {@link LazyPatcher}.
+ *
+ * <p>This does the same as {@link LazyPatchingAgent} without needing an agent, for loading patched mods outside of
+ * the game.</p>
+ */
+public class LazyPatchingClassLoader extends URLClassLoader {
+	private final LazyPatcher patcher;
+	private final Set<String> deferred = new HashSet<>();
+
+	/**
+	 * @param urls the patched jars or directories to load classes from
+	 */
+	public LazyPatchingClassLoader(URL[] urls, ClassLoader parent, LazyPatcher patcher) {
+		super(urls, parent);
+		this.patcher = patcher;
+
+		for (URL url : urls) {
+			deferred.addAll(patcher.getDeferredClasses(url));
+		}
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		String internalName = name.replace('.', '/');
+
+		if (!deferred.contains(internalName)) {
+			return super.findClass(name);
+		}
+
+		URL resource = findResource(internalName + ".class");
+
+		if (resource == null) {
+			throw new ClassNotFoundException(name);
+		}
+
+		byte[] patched;
+
+		try (InputStream stream = resource.openStream()) {
+			patched = patcher.patch(IOUtils.toByteArray(stream));
+		} catch (IOException ex) {
+			throw new ClassNotFoundException(name, ex);
+		}
+
+		return defineClass(name, patched, 0, patched.length);
+	}
+}
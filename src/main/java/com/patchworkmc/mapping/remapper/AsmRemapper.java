@@ -0,0 +1,163 @@
+package com.patchworkmc.mapping.remapper;
+
+import org.apache.logging.log4j.Level;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.MethodRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import com.patchworkmc.Diagnostics;
+
+/**
+ * Remaps bytecode with ASM using the mappings of a {@link PatchworkRemapper}, so that remapping can happen inside of
+ * the same class visitor chain as patching.
+ *
+ * <p>Unlike tiny-remapper, this does not read the class hierarchy of Minecraft. Instead it relies on srg member names
+ * being unique: references to inherited members are resolved by name and descriptor, then by name alone if that name
+ * only ever maps to one name. Members that still can not be resolved are left as they are, and reported to the
+ * {@link Diagnostics} of the remapper, see {@link #withDiagnostics(Diagnostics)}.</p>
+ */
+public class AsmRemapper extends Remapper {
+	private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+
+	private final PatchworkRemapper remapper;
+	private final Diagnostics diagnostics;
+
+	public AsmRemapper(PatchworkRemapper remapper) {
+		this(remapper, new Diagnostics());
+	}
+
+	private AsmRemapper(PatchworkRemapper remapper, Diagnostics diagnostics) {
+		this.remapper = remapper;
+		this.diagnostics = diagnostics;
+	}
+
+	/**
+	 * @return a remapper with the same mappings that reports members it can't remap to the given diagnostics, such as
+	 * those of the mod being patched
+	 */
+	public AsmRemapper withDiagnostics(Diagnostics diagnostics) {
+		return diagnostics == this.diagnostics ? this : new AsmRemapper(remapper, diagnostics);
+	}
+
+	/**
+	 * Creates a class visitor that remaps a class before passing it on.
+	 *
+	 * @param classVisitor the visitor to receive the remapped class
+	 * @return the remapping visitor
+	 */
+	public ClassVisitor remapping(ClassVisitor classVisitor) {
+		return new org.objectweb.asm.commons.ClassRemapper(Opcodes.ASM7, classVisitor, this) {
+			@Override
+			public void visitSource(String source, String debug) {
+				// Rebuild the source file name from the mapped class name, like tiny-remapper does
+				if (source != null) {
+					String mappedName = AsmRemapper.this.map(className);
+					String simpleName = mappedName.substring(mappedName.lastIndexOf('/') + 1);
+					int innerIndex = simpleName.indexOf('$');
+
+					source = (innerIndex == -1 ? simpleName : simpleName.substring(0, innerIndex)) + ".java";
+				}
+
+				super.visitSource(source, debug);
+			}
+
+			@Override
+			protected MethodVisitor createMethodRemapper(MethodVisitor methodVisitor) {
+				return new LambdaMethodRemapper(methodVisitor);
+			}
+		};
+	}
+
+	@Override
+	public String map(String internalName) {
+		return remapper.getNaiveRemapper().getClass(internalName);
+	}
+
+	@Override
+	public String mapMethodName(String owner, String name, String descriptor) {
+		if (!name.startsWith("func_")) {
+			return name;
+		}
+
+		String result = remapper.findMethod(owner, name, descriptor);
+
+		if (result == null) {
+			reportUnmapped(owner, name, descriptor);
+
+			return name;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Lambdas are remapped with the descriptor of the method they implement by {@link LambdaMethodRemapper}, so this is
+	 * only reached by other bootstrap methods, which don't say what the descriptor of the method is.
+	 */
+	@Override
+	public String mapInvokeDynamicMethodName(String name, String descriptor) {
+		if (name.startsWith("func_")) {
+			diagnostics.report(Level.WARN, "Could not remap the dynamic call site %s%s, as the descriptor of the method it refers to is not known", name, descriptor);
+		}
+
+		return name;
+	}
+
+	@Override
+	public String mapFieldName(String owner, String name, String descriptor) {
+		String result = remapper.findField(owner, name);
+
+		return result != null ? result : name;
+	}
+
+	private void reportUnmapped(String owner, String name, String descriptor) {
+		if (remapper.isAmbiguous(name)) {
+			diagnostics.report(Level.WARN, "Could not remap method %s.%s%s, as its name maps to more than one name, leaving it unmapped", owner, name, descriptor);
+		} else {
+			diagnostics.report(Level.WARN, "Could not remap method %s.%s%s, leaving it unmapped", owner, name, descriptor);
+		}
+	}
+
+	/**
+	 * Remaps the name of the method a lambda or method reference implements with the descriptor of that method, which
+	 * {@code LambdaMetafactory} takes as its first argument, rather than by name alone.
+	 */
+	private class LambdaMethodRemapper extends MethodRemapper {
+		private LambdaMethodRemapper(MethodVisitor methodVisitor) {
+			super(Opcodes.ASM7, methodVisitor, AsmRemapper.this);
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			Type returnType = Type.getReturnType(descriptor);
+			boolean lambda = bootstrapMethodHandle.getOwner().equals(LAMBDA_METAFACTORY) && bootstrapMethodArguments.length > 0
+					&& bootstrapMethodArguments[0] instanceof Type && returnType.getSort() == Type.OBJECT;
+
+			if (!lambda || !name.startsWith("func_")) {
+				super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+
+				return;
+			}
+
+			// The functional interface is the return type of the call site descriptor, and the erased descriptor of the
+			// method it implements is the first argument of the metafactory.
+			String owner = returnType.getInternalName();
+			String implementedDescriptor = ((Type) bootstrapMethodArguments[0]).getDescriptor();
+			String mappedName = mapMethodName(owner, name, implementedDescriptor);
+			Object[] remappedArguments = new Object[bootstrapMethodArguments.length];
+
+			for (int i = 0; i < bootstrapMethodArguments.length; i++) {
+				remappedArguments[i] = mapValue(bootstrapMethodArguments[i]);
+			}
+
+			// Skips MethodRemapper, which would look the name up again without the descriptor
+			if (mv != null) {
+				mv.visitInvokeDynamicInsn(mappedName, mapMethodDesc(descriptor), (Handle) mapValue(bootstrapMethodHandle), remappedArguments);
+			}
+		}
+	}
+}
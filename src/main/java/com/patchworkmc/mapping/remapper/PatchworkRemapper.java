@@ -1,5 +1,8 @@
 package com.patchworkmc.mapping.remapper;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.HashSet;
 
@@ -21,12 +24,35 @@ public class PatchworkRemapper {
 
 	private final HashSet<String> blacklistedMethods = new HashSet<>();
 
+	// method.name + method.desc -> mapped name, for func_ methods where the owner is not known
+	private final HashMap<String, String> methodsByDescriptor = new HashMap<>();
+	private final HashSet<String> blacklistedDescriptors = new HashSet<>();
+
+	// A hash of every mapping, in the order they were loaded in
+	private final String fingerprint;
+
 	public PatchworkRemapper(IMappingProvider mappings) {
 		this.naiveRemapper = new Naive();
 
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is always supported", ex);
+		}
+
 		mappings.load(new IMappingProvider.MappingAcceptor() {
+			private void hash(String... parts) {
+				for (String part : parts) {
+					digest.update(part.getBytes(StandardCharsets.UTF_8));
+					digest.update((byte) 0);
+				}
+			}
+
 			@Override
 			public void acceptClass(String srcName, String dstName) {
+				hash("c", srcName, dstName);
 				memberMap.computeIfAbsent(srcName, s -> new HashMap<>());
 
 				if (classes.get(srcName) == null) {
@@ -38,6 +64,7 @@ public class PatchworkRemapper {
 
 			@Override
 			public void acceptMethod(IMappingProvider.Member method, String dstName) {
+				hash("m", method.owner, method.name, method.desc, dstName);
 				memberMap.computeIfAbsent(method.owner, s -> new HashMap<>())
 					.put(method.name + method.desc, dstName);
 
@@ -45,6 +72,17 @@ public class PatchworkRemapper {
 					return;
 				}
 
+				String key = method.name + method.desc;
+
+				if (!blacklistedDescriptors.contains(key)) {
+					String presentDescriptorName = methodsByDescriptor.putIfAbsent(key, dstName);
+
+					if (presentDescriptorName != null && !presentDescriptorName.equals(dstName)) {
+						blacklistedDescriptors.add(key);
+						methodsByDescriptor.remove(key);
+					}
+				}
+
 				if (blacklistedMethods.contains(method.name)) {
 					if (DEBUG) {
 						Patchwork.LOGGER.debug("Another duplicated method mapping for %s (proposed %s)", method.name, dstName);
@@ -80,6 +118,7 @@ public class PatchworkRemapper {
 
 			@Override
 			public void acceptField(IMappingProvider.Member field, String dstName) {
+				hash("f", field.owner, field.name, dstName);
 				memberMap.computeIfAbsent(field.owner, s -> new HashMap<>()).put(field.name, dstName);
 
 				if (!field.name.startsWith("field_")) {
@@ -95,6 +134,21 @@ public class PatchworkRemapper {
 				}
 			}
 		});
+
+		StringBuilder hex = new StringBuilder();
+
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+
+		this.fingerprint = hex.toString();
+	}
+
+	/**
+	 * @return a hash of the mappings, which is the same for the same mappings, for keying caches of remapped classes
+	 */
+	public String getFingerprint() {
+		return fingerprint;
 	}
 
 	public String getMethod(String owner, String name, String descriptor) throws MissingMappingException {
@@ -129,6 +183,59 @@ public class PatchworkRemapper {
 		return result;
 	}
 
+	/**
+	 * Looks up the mapped name of a method without requiring the owner to be the class declaring it, as is the case
+	 * for references to inherited methods in bytecode.
+	 *
+	 * <p>An exact match on the owner is preferred, then a match on the name and descriptor alone, and finally a match
+	 * on the name alone, which is only made if every mapping of the name maps it to the same name.</p>
+	 *
+	 * @return the mapped name, or null if the method is not a srg method or could not be mapped unambiguously, see
+	 * {@link #isAmbiguous(String)}
+	 */
+	public String findMethod(String owner, String name, String descriptor) {
+		if (!name.startsWith("func_")) {
+			return null;
+		}
+
+		HashMap<String, String> classMembers = this.memberMap.get(owner);
+		String result = classMembers != null ? classMembers.get(name + descriptor) : null;
+
+		if (result == null) {
+			result = methodsByDescriptor.get(name + descriptor);
+		}
+
+		if (result == null && !blacklistedMethods.contains(name)) {
+			result = naiveRemapper.methods.get(name);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return whether a srg method name maps to more than one name, so that it can't be mapped without its owner or
+	 * descriptor
+	 */
+	public boolean isAmbiguous(String name) {
+		return blacklistedMethods.contains(name);
+	}
+
+	/**
+	 * Looks up the mapped name of a field without requiring the owner to be the class declaring it.
+	 *
+	 * @return the mapped name, or null if the field is not a srg field or has no mapping
+	 */
+	public String findField(String owner, String name) {
+		if (!name.startsWith("field_")) {
+			return null;
+		}
+
+		HashMap<String, String> classMembers = this.memberMap.get(owner);
+		String result = classMembers != null ? classMembers.get(name) : null;
+
+		return result != null ? result : naiveRemapper.fields.get(name);
+	}
+
 	public Naive getNaiveRemapper() {
 		return naiveRemapper;
 	}
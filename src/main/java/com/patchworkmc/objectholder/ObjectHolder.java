@@ -1,5 +1,9 @@
 package com.patchworkmc.objectholder;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class ObjectHolder {
 	private String field;
 	private String descriptor;
@@ -36,6 +40,20 @@ public class ObjectHolder {
 		return name;
 	}
 
+	/**
+	 * Writes the object holder in a binary form that can be read back with {@link #read(DataInput)}.
+	 */
+	public void write(DataOutput output) throws IOException {
+		output.writeUTF(field);
+		output.writeUTF(descriptor);
+		output.writeUTF(namespace);
+		output.writeUTF(name);
+	}
+
+	public static ObjectHolder read(DataInput input) throws IOException {
+		return new ObjectHolder(input.readUTF(), input.readUTF(), input.readUTF(), input.readUTF());
+	}
+
 	@Override
 	public String toString() {
 		return "ObjectHolder{" + "field='" + field + '\'' + ", descriptor='" + descriptor + '\'' + ", namespace='" + namespace + '\'' + ", name='" + name + '\'' + '}';
@@ -0,0 +1,325 @@
+package com.patchworkmc.objectholder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.objectholder.initialization.VanillaRegistry;
+
+/**
+ * Generates a single class that applies every {@code @ObjectHolder} of a mod, in place of the class per field
+ * generated by {@link ObjectHolderGenerator}.
+ *
+ * <p>Instances of the applier are {@link java.util.function.Consumer}s that carry the index of their field, and
+ * assign it through a {@code tableswitch}. The registrations are stored as tables in string constants, which the
+ * static {@code register} method walks in a loop, so the generated code does not grow with the number of holders.</p>
+ */
+public class ObjectHolderApplierGenerator {
+	private static final String OBJECT_HOLDER_REGISTRY = "net/patchworkmc/api/registries/ObjectHolderRegistry";
+	// net.minecraft.util.Registry
+	private static final String REGISTRY = "net/minecraft/class_2378";
+	private static final String REGISTER_VANILLA_DESCRIPTOR = "(Lnet/minecraft/class_2378;Ljava/lang/String;Ljava/lang/String;Ljava/util/function/Consumer;)V";
+	private static final String REGISTER_DYNAMIC_DESCRIPTOR = "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/String;Ljava/util/function/Consumer;)V";
+
+	// Separates the cells of a registration table. It can not appear in namespaces or names.
+	private static final String SEPARATOR = "\u0000";
+	// String constants are limited to 65535 bytes, leave some room to spare
+	private static final int MAX_CONSTANT_LENGTH = 60000;
+
+	private ObjectHolderApplierGenerator() {
+		// NO-OP
+	}
+
+	/**
+	 * Generates the applier.
+	 *
+	 * @param applierName the name of the class to generate
+	 * @param holders     the object holders of the mod, as targetClass -> ObjectHolder
+	 * @param visitor     the class visitor that will be visited with the applier class
+	 */
+	public static void generate(String applierName, List<Map.Entry<String, ObjectHolder>> holders, ClassVisitor visitor) {
+		visitor.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, applierName, "Ljava/lang/Object;Ljava/util/function/Consumer<Ljava/lang/Object;>;", "java/lang/Object", new String[] {
+				"java/util/function/Consumer" });
+
+		visitor.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "index", "I", null, null).visitEnd();
+
+		{
+			MethodVisitor method = visitor.visitMethod(Opcodes.ACC_PRIVATE, "<init>", "(I)V", null, null);
+
+			method.visitVarInsn(Opcodes.ALOAD, 0);
+			method.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+
+			method.visitVarInsn(Opcodes.ALOAD, 0);
+			method.visitVarInsn(Opcodes.ILOAD, 1);
+			method.visitFieldInsn(Opcodes.PUTFIELD, applierName, "index", "I");
+
+			method.visitInsn(Opcodes.RETURN);
+
+			method.visitMaxs(2, 2);
+			method.visitEnd();
+		}
+
+		// Holders registered to vanilla registries come first, so each table covers a contiguous range of indices
+		List<Map.Entry<String, ObjectHolder>> ordered = new ArrayList<>();
+		Map<Object, Integer> vanillaRegistries = new LinkedHashMap<>();
+		Map<Object, Integer> dynamicRegistries = new LinkedHashMap<>();
+		List<String> vanillaRows = new ArrayList<>();
+		List<String> dynamicRows = new ArrayList<>();
+
+		for (Map.Entry<String, ObjectHolder> entry : holders) {
+			VanillaRegistry registry = VanillaRegistry.get(entry.getValue().getDescriptor());
+
+			if (registry != null) {
+				int registryIndex = vanillaRegistries.computeIfAbsent(registry, k -> vanillaRegistries.size());
+
+				vanillaRows.add(row(registryIndex, entry.getValue()));
+				ordered.add(entry);
+			}
+		}
+
+		for (Map.Entry<String, ObjectHolder> entry : holders) {
+			String descriptor = entry.getValue().getDescriptor();
+
+			if (VanillaRegistry.get(descriptor) == null) {
+				if (descriptor.startsWith("Lnet/minecraft/class_")) {
+					Patchwork.LOGGER.warn("Don't know what registry the minecraft class " + descriptor + " belongs to, falling back to dynamic!");
+				}
+
+				int registryIndex = dynamicRegistries.computeIfAbsent(Type.getType(descriptor), k -> dynamicRegistries.size());
+
+				dynamicRows.add(row(registryIndex, entry.getValue()));
+				ordered.add(entry);
+			}
+		}
+
+		visitAccept(visitor, applierName, ordered);
+
+		{
+			MethodVisitor method = visitor.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "register", "()V", null, null);
+
+			visitRegisterLoops(method, applierName, REGISTRY, vanillaRegistries.keySet(), vanillaRows, 0, REGISTER_VANILLA_DESCRIPTOR);
+			visitRegisterLoops(method, applierName, "java/lang/Class", dynamicRegistries.keySet(), dynamicRows, vanillaRows.size(), REGISTER_DYNAMIC_DESCRIPTOR);
+
+			method.visitInsn(Opcodes.RETURN);
+
+			method.visitMaxs(8, 3);
+			method.visitEnd();
+		}
+
+		visitor.visitEnd();
+	}
+
+	private static String row(int registryIndex, ObjectHolder holder) {
+		return registryIndex + SEPARATOR + holder.getNamespace() + SEPARATOR + holder.getName();
+	}
+
+	/**
+	 * Splits the rows of a table into string constants that fit in the constant pool, and generates a loop for each.
+	 */
+	private static void visitRegisterLoops(MethodVisitor method, String applierName, String registryType, Collection<Object> registries,
+			List<String> rows, int firstIndex, String registerDescriptor) {
+		StringBuilder table = new StringBuilder();
+		int tableLength = 0;
+		int tableStart = firstIndex;
+
+		for (int i = 0; i < rows.size(); i++) {
+			String row = rows.get(i);
+			int rowLength = getConstantLength(row) + getConstantLength(SEPARATOR);
+
+			if (tableLength + rowLength > MAX_CONSTANT_LENGTH) {
+				visitRegisterLoop(method, applierName, registryType, registries, table.toString(), tableStart, registerDescriptor);
+
+				table.setLength(0);
+				tableLength = 0;
+				tableStart = firstIndex + i;
+			}
+
+			if (table.length() != 0) {
+				table.append(SEPARATOR);
+			}
+
+			table.append(row);
+			tableLength += rowLength;
+		}
+
+		if (table.length() != 0) {
+			visitRegisterLoop(method, applierName, registryType, registries, table.toString(), tableStart, registerDescriptor);
+		}
+	}
+
+	/**
+	 * @return the length of a string in the modified UTF-8 encoding used by the constant pool
+	 */
+	private static int getConstantLength(String value) {
+		int length = 0;
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if (c >= 0x01 && c <= 0x7F) {
+				length += 1;
+			} else if (c <= 0x7FF) {
+				length += 2;
+			} else {
+				length += 3;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Generates {@code accept(Object)}, which assigns the value to the field selected by {@code this.index}.
+	 */
+	private static void visitAccept(ClassVisitor visitor, String applierName, List<Map.Entry<String, ObjectHolder>> ordered) {
+		MethodVisitor method = visitor.visitMethod(Opcodes.ACC_PUBLIC, "accept", "(Ljava/lang/Object;)V", null, null);
+
+		Label invalid = new Label();
+		Label[] cases = new Label[ordered.size()];
+
+		for (int i = 0; i < cases.length; i++) {
+			cases[i] = new Label();
+		}
+
+		method.visitVarInsn(Opcodes.ALOAD, 0);
+		method.visitFieldInsn(Opcodes.GETFIELD, applierName, "index", "I");
+		method.visitTableSwitchInsn(0, cases.length - 1, invalid, cases);
+
+		for (int i = 0; i < cases.length; i++) {
+			String targetClass = ordered.get(i).getKey();
+			ObjectHolder holder = ordered.get(i).getValue();
+
+			method.visitLabel(cases[i]);
+			method.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+
+			method.visitVarInsn(Opcodes.ALOAD, 1);
+			method.visitTypeInsn(Opcodes.CHECKCAST, Type.getType(holder.getDescriptor()).getInternalName());
+			method.visitFieldInsn(Opcodes.PUTSTATIC, targetClass, holder.getField(), holder.getDescriptor());
+
+			method.visitInsn(Opcodes.RETURN);
+		}
+
+		method.visitLabel(invalid);
+		method.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+
+		method.visitTypeInsn(Opcodes.NEW, "java/lang/IllegalStateException");
+		method.visitInsn(Opcodes.DUP);
+		method.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "()V", false);
+		method.visitInsn(Opcodes.ATHROW);
+
+		method.visitMaxs(2, 2);
+		method.visitEnd();
+	}
+
+	/**
+	 * Generates a loop that registers a table of holders.
+	 *
+	 * <p>Each row of the table is made of the index of the registry in the registries array, the namespace and the
+	 * name. Locals: 0 - the registries array, 1 - the split table, 2 - the index of the current row in the table.</p>
+	 */
+	private static void visitRegisterLoop(MethodVisitor method, String applierName, String registryType, Collection<Object> registries,
+			String table, int firstIndex, String registerDescriptor) {
+		String registryArray = "[L" + registryType + ";";
+
+		// Build the registries array
+		visitInt(method, registries.size());
+		method.visitTypeInsn(Opcodes.ANEWARRAY, registryType);
+
+		int registryIndex = 0;
+
+		for (Object registry : registries) {
+			method.visitInsn(Opcodes.DUP);
+			visitInt(method, registryIndex++);
+
+			if (registry instanceof VanillaRegistry) {
+				VanillaRegistry vanillaRegistry = (VanillaRegistry) registry;
+				method.visitFieldInsn(Opcodes.GETSTATIC, REGISTRY, vanillaRegistry.getField(), vanillaRegistry.getFieldDescriptor());
+			} else {
+				method.visitLdcInsn(registry);
+			}
+
+			method.visitInsn(Opcodes.AASTORE);
+		}
+
+		method.visitVarInsn(Opcodes.ASTORE, 0);
+
+		// Split the table
+		method.visitLdcInsn(table);
+		method.visitLdcInsn(SEPARATOR);
+		method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "split", "(Ljava/lang/String;)[Ljava/lang/String;", false);
+		method.visitVarInsn(Opcodes.ASTORE, 1);
+
+		method.visitInsn(Opcodes.ICONST_0);
+		method.visitVarInsn(Opcodes.ISTORE, 2);
+
+		Label condition = new Label();
+		Label end = new Label();
+		Object[] locals = new Object[] { registryArray, "[Ljava/lang/String;", Opcodes.INTEGER };
+
+		method.visitLabel(condition);
+		method.visitFrame(Opcodes.F_FULL, locals.length, locals, 0, new Object[0]);
+
+		method.visitVarInsn(Opcodes.ILOAD, 2);
+		method.visitVarInsn(Opcodes.ALOAD, 1);
+		method.visitInsn(Opcodes.ARRAYLENGTH);
+		method.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+
+		method.visitFieldInsn(Opcodes.GETSTATIC, OBJECT_HOLDER_REGISTRY, "INSTANCE", "L" + OBJECT_HOLDER_REGISTRY + ";");
+
+		// registries[Integer.parseInt(table[row])]
+		method.visitVarInsn(Opcodes.ALOAD, 0);
+		method.visitVarInsn(Opcodes.ALOAD, 1);
+		method.visitVarInsn(Opcodes.ILOAD, 2);
+		method.visitInsn(Opcodes.AALOAD);
+		method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "parseInt", "(Ljava/lang/String;)I", false);
+		method.visitInsn(Opcodes.AALOAD);
+
+		// table[row + 1], table[row + 2]
+		for (int cell = 1; cell <= 2; cell++) {
+			method.visitVarInsn(Opcodes.ALOAD, 1);
+			method.visitVarInsn(Opcodes.ILOAD, 2);
+			visitInt(method, cell);
+			method.visitInsn(Opcodes.IADD);
+			method.visitInsn(Opcodes.AALOAD);
+		}
+
+		// new Applier(row / 3 + firstIndex)
+		method.visitTypeInsn(Opcodes.NEW, applierName);
+		method.visitInsn(Opcodes.DUP);
+		method.visitVarInsn(Opcodes.ILOAD, 2);
+		visitInt(method, 3);
+		method.visitInsn(Opcodes.IDIV);
+		visitInt(method, firstIndex);
+		method.visitInsn(Opcodes.IADD);
+		method.visitMethodInsn(Opcodes.INVOKESPECIAL, applierName, "<init>", "(I)V", false);
+
+		method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, OBJECT_HOLDER_REGISTRY, "register", registerDescriptor, false);
+
+		method.visitIincInsn(2, 3);
+		method.visitJumpInsn(Opcodes.GOTO, condition);
+
+		method.visitLabel(end);
+		method.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+	}
+
+	private static void visitInt(MethodVisitor method, int value) {
+		if (value >= -1 && value <= 5) {
+			method.visitInsn(Opcodes.ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			method.visitIntInsn(Opcodes.BIPUSH, value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			method.visitIntInsn(Opcodes.SIPUSH, value);
+		} else {
+			method.visitLdcInsn(value);
+		}
+	}
+}
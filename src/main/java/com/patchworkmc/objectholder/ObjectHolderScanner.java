@@ -12,7 +12,7 @@ import com.patchworkmc.Patchwork;
 import com.patchworkmc.annotation.StringAnnotationHandler;
 
 public class ObjectHolderScanner extends ClassVisitor {
-	private static final String OBJECT_HOLDER = "Lnet/minecraftforge/registries/ObjectHolder;";
+	public static final String OBJECT_HOLDER = "Lnet/minecraftforge/registries/ObjectHolder;";
 	private static final String MOD = "Lnet/minecraftforge/fml/common/Mod;";
 
 	private static final int EXPECTED_ACCESS = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL;
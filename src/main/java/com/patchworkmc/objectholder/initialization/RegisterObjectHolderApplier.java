@@ -0,0 +1,28 @@
+package com.patchworkmc.objectholder.initialization;
+
+import java.util.function.Consumer;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Registers every object holder of a mod through the applier generated by
+ * {@link com.patchworkmc.objectholder.ObjectHolderApplierGenerator}.
+ */
+public class RegisterObjectHolderApplier implements Consumer<MethodVisitor> {
+	private String applierName;
+
+	public RegisterObjectHolderApplier(String applierName) {
+		this.applierName = applierName;
+	}
+
+	@Override
+	public void accept(MethodVisitor method) {
+		method.visitMethodInsn(Opcodes.INVOKESTATIC, applierName, "register", "()V", false);
+
+		method.visitInsn(Opcodes.RETURN);
+
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+	}
+}
@@ -0,0 +1,148 @@
+package com.patchworkmc.patch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * The redirects applied by {@link RedirectTransformer} for a Minecraft version, loaded from
+ * {@code /redirects/<version>.json}.
+ *
+ * <p>The table maps the intermediary name of a Minecraft class to everything that is redirected away from it, so that
+ * a single lookup on the owner of an instruction finds every redirect that may apply to it.</p>
+ */
+public final class RedirectTable {
+	private static final Gson GSON = new Gson();
+	private static final Map<String, RedirectTable> tables = new ConcurrentHashMap<>();
+
+	private final HashMap<String, ClassRedirects> classes;
+
+	private RedirectTable(HashMap<String, ClassRedirects> classes) {
+		this.classes = classes;
+	}
+
+	/**
+	 * @param version the Minecraft version
+	 * @return the redirect table for the version, which is only loaded once
+	 * @throws IllegalArgumentException if there is no redirect table for the version
+	 */
+	public static RedirectTable forVersion(String version) {
+		return tables.computeIfAbsent(version, RedirectTable::load);
+	}
+
+	private static RedirectTable load(String version) {
+		String path = "/redirects/" + version + ".json";
+
+		try (InputStream stream = RedirectTable.class.getResourceAsStream(path)) {
+			if (stream == null) {
+				throw new IllegalArgumentException("No redirect table for Minecraft " + version + " (expected " + path + ")");
+			}
+
+			Type type = new TypeToken<HashMap<String, ClassRedirects>>() { }.getType();
+
+			HashMap<String, ClassRedirects> classes = GSON.fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), type);
+
+			classes.forEach((owner, redirects) -> {
+				if (redirects.constructors != null && new HashSet<>(redirects.constructors.values()).size() > 1) {
+					throw new IllegalArgumentException("The constructors of " + owner + " are redirected to more than one class in " + path);
+				}
+			});
+
+			return new RedirectTable(classes);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to read the redirect table " + path, ex);
+		}
+	}
+
+	/**
+	 * @param owner the internal name of a class
+	 * @return the redirects away from the class, or null if there are none
+	 */
+	public ClassRedirects get(String owner) {
+		return classes.get(owner);
+	}
+
+	/**
+	 * @return the internal names of every class that has redirects
+	 */
+	public Set<String> getOwners() {
+		return Collections.unmodifiableSet(classes.keySet());
+	}
+
+	public static class ClassRedirects {
+		private String superclass;
+		private List<String> superConstructors;
+		private HashMap<String, String> constructors;
+		private HashMap<String, MethodRedirect> methods;
+
+		/**
+		 * @return the class that replaces this one as the superclass of mod classes, or null
+		 */
+		public String getSuperclass() {
+			return superclass;
+		}
+
+		/**
+		 * @return the descriptors of the super constructors the replacement superclass has, or null if they are not
+		 * checked
+		 */
+		public List<String> getSuperConstructors() {
+			return superConstructors;
+		}
+
+		/**
+		 * @return the class that is constructed in place of this one, or null if no constructor of this class is
+		 * redirected. A {@code new} is redirected before it is known which constructor is called, so every constructor
+		 * redirect of a class has the same owner.
+		 */
+		public String getConstructedClass() {
+			return constructors == null || constructors.isEmpty() ? null : constructors.values().iterator().next();
+		}
+
+		/**
+		 * @param descriptor the descriptor of a constructor of this class
+		 * @return the class whose constructor with the same descriptor is called in place of this one, or null
+		 */
+		public String getConstructor(String descriptor) {
+			return constructors == null ? null : constructors.get(descriptor);
+		}
+
+		/**
+		 * @param name the name of a method of this class
+		 * @return the static method calls to the method are redirected to, or null
+		 */
+		public MethodRedirect getMethod(String name) {
+			return methods == null ? null : methods.get(name);
+		}
+	}
+
+	/**
+	 * A static method that replaces a method of a Minecraft class. Calls to instance methods are redirected with the
+	 * receiver passed as the first argument.
+	 */
+	public static class MethodRedirect {
+		private String owner;
+		private String name;
+
+		public String getOwner() {
+			return owner;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
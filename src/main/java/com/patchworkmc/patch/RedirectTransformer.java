@@ -0,0 +1,111 @@
+package com.patchworkmc.patch;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.patchworkmc.Patchwork;
+
+/**
+ * Redirects superclasses, constructions and method calls away from Minecraft classes and onto Patchwork's
+ * replacements, as described by a {@link RedirectTable}.
+ *
+ * <p>Every instruction that references a class costs a single lookup on the owner, no matter how many redirects
+ * there are.</p>
+ */
+public class RedirectTransformer extends ClassVisitor {
+	private final RedirectTable table;
+
+	// The redirects of the original superclass, if the superclass was redirected
+	private RedirectTable.ClassRedirects superRedirects;
+
+	public RedirectTransformer(ClassVisitor classVisitor, RedirectTable table) {
+		super(Opcodes.ASM7, classVisitor);
+
+		this.table = table;
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+		RedirectTable.ClassRedirects redirects = superName == null ? null : table.get(superName);
+
+		if (redirects != null && redirects.getSuperclass() != null) {
+			superRedirects = redirects;
+			superName = redirects.getSuperclass();
+		}
+
+		super.visit(version, access, name, signature, superName, interfaces);
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		return new MethodTransformer(super.visitMethod(access, name, descriptor, signature, exceptions));
+	}
+
+	private class MethodTransformer extends MethodVisitor {
+		private MethodTransformer(MethodVisitor parent) {
+			super(Opcodes.ASM7, parent);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			if (opcode == Opcodes.NEW) {
+				RedirectTable.ClassRedirects redirects = table.get(type);
+
+				if (redirects != null && redirects.getConstructedClass() != null) {
+					type = redirects.getConstructedClass();
+				}
+			}
+
+			super.visitTypeInsn(opcode, type);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			RedirectTable.ClassRedirects redirects = table.get(owner);
+
+			if (redirects == null) {
+				super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+
+				return;
+			}
+
+			if (opcode == Opcodes.INVOKESPECIAL && name.equals("<init>")) {
+				String constructor = redirects.getConstructor(descriptor);
+
+				if (constructor != null) {
+					owner = constructor;
+				} else if (redirects == superRedirects) {
+					// Only a constructor of this class can call the constructor of its original superclass
+					if (redirects.getSuperConstructors() != null && !redirects.getSuperConstructors().contains(descriptor)) {
+						Patchwork.LOGGER.error("Unexpected descriptor for super() in %s: %s", owner, descriptor);
+					}
+
+					owner = redirects.getSuperclass();
+				} else if (redirects.getConstructedClass() != null) {
+					// The new instruction was redirected, but there is no replacement for this constructor
+					Patchwork.LOGGER.error("Unexpected descriptor for a redirected constructor of %s: %s", owner, descriptor);
+				}
+
+				super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+
+				return;
+			}
+
+			RedirectTable.MethodRedirect redirect = redirects.getMethod(name);
+
+			if (redirect == null) {
+				super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+
+				return;
+			}
+
+			if (opcode != Opcodes.INVOKESTATIC) {
+				// Pass the receiver as the first argument of the static replacement
+				descriptor = "(L" + owner + ";" + descriptor.substring(1);
+			}
+
+			super.visitMethodInsn(Opcodes.INVOKESTATIC, redirect.getOwner(), redirect.getName(), descriptor, false);
+		}
+	}
+}
@@ -1,11 +1,12 @@
 package com.patchworkmc.patch;
 
+import org.apache.logging.log4j.Level;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
-import com.patchworkmc.Patchwork;
+import com.patchworkmc.Diagnostics;
 import com.patchworkmc.mapping.remapper.AmbiguousMappingException;
 import com.patchworkmc.mapping.remapper.PatchworkRemapper;
 
@@ -15,10 +16,12 @@ import com.patchworkmc.mapping.remapper.PatchworkRemapper;
  */
 public class StringConstantRemapper extends ClassVisitor {
 	private PatchworkRemapper.Naive remapper;
+	private Diagnostics diagnostics;
 
-	public StringConstantRemapper(ClassVisitor classVisitor, PatchworkRemapper.Naive remapper) {
+	public StringConstantRemapper(ClassVisitor classVisitor, PatchworkRemapper.Naive remapper, Diagnostics diagnostics) {
 		super(Opcodes.ASM7, classVisitor);
 		this.remapper = remapper;
+		this.diagnostics = diagnostics;
 	}
 
 	/**
@@ -46,7 +49,7 @@ public class StringConstantRemapper extends ClassVisitor {
 			try {
 				name = remapper.getMethod(name);
 			} catch (AmbiguousMappingException e) {
-				Patchwork.LOGGER.warn("Failed to remap string constant: %s", e.getMessage());
+				diagnostics.report(Level.WARN, "Failed to remap string constant: %s", e.getMessage());
 
 				return name;
 			}
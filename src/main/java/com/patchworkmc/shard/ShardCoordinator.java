@@ -0,0 +1,299 @@
+package com.patchworkmc.shard;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.transformer.ClassHierarchy;
+
+/**
+ * Patches a batch of mod jars across several worker processes on the same machine, see {@link ShardWorker}.
+ *
+ * <p>Each worker has its own heap, so a mod that runs a worker out of memory only takes that worker down. The jar it
+ * was patching is retried on a new worker, up to the number of attempts set by the {@code patchwork:shard_attempts}
+ * system property, 3 by default. Workers take jars from a shared queue, so a slow mod doesn't hold up the rest of a
+ * shard. A worker that sends back something that is not a message is treated the same as one that exits.</p>
+ *
+ * <p>Before any worker is started, the coordinator generates the mappings in the data folder and indexes the class
+ * hierarchy of the batch once. The workers read the mappings from the data folder, and the hierarchy from a snapshot
+ * file.</p>
+ */
+public class ShardCoordinator {
+	private final Path workingDir;
+	private final int workers;
+	private final int maxAttempts;
+	private final Gson gson = new Gson();
+
+	private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+	private final AtomicInteger remaining = new AtomicInteger();
+	private final AtomicInteger liveWorkers = new AtomicInteger();
+	private final List<ShardReport.Entry> entries = new ArrayList<>();
+
+	/**
+	 * @param workingDir the directory with the input, output and data folders, see {@link Patchwork#create(Path)}
+	 * @param workers    the number of worker processes
+	 */
+	public ShardCoordinator(Path workingDir, int workers) {
+		this.workingDir = workingDir;
+		this.workers = workers;
+		this.maxAttempts = Integer.getInteger("patchwork:shard_attempts", 3);
+	}
+
+	/**
+	 * Patches every jar, and waits for all of them to finish.
+	 */
+	public ShardReport run(List<Path> jars) throws IOException, InterruptedException {
+		List<String> allJars = jars.stream().map(jar -> jar.toAbsolutePath().toString()).collect(Collectors.toList());
+		long start = System.nanoTime();
+
+		allJars.forEach(jar -> tasks.add(new Task(jar)));
+		remaining.set(allJars.size());
+		liveWorkers.set(workers);
+
+		// Creating Patchwork generates the mappings, so they already exist when the workers start
+		Path hierarchy = Files.createTempFile("patchwork-hierarchy", ".bin");
+
+		try {
+			Patchwork.create(workingDir).indexHierarchy(jars).write(hierarchy);
+
+			Patchwork.LOGGER.info("Patching %s jars with %s worker processes", allJars.size(), workers);
+
+			List<Thread> threads = new ArrayList<>();
+
+			for (int i = 0; i < workers; i++) {
+				int index = i;
+				Thread thread = new Thread(() -> runWorker(index, hierarchy), "Patchwork Shard " + i);
+
+				threads.add(thread);
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} finally {
+			Files.deleteIfExists(hierarchy);
+		}
+
+		ShardReport report = new ShardReport(entries, (System.nanoTime() - start) / 1_000_000);
+		report.log();
+
+		return report;
+	}
+
+	private void runWorker(int index, Path hierarchy) {
+		int failedStarts = 0;
+
+		try {
+			while (remaining.get() > 0 && failedStarts < maxAttempts) {
+				Worker worker;
+
+				try {
+					worker = new Worker(index, hierarchy);
+				} catch (IOException ex) {
+					Patchwork.LOGGER.error("Worker %s failed to start: %s", index, ex.getMessage());
+					failedStarts++;
+					continue;
+				}
+
+				failedStarts = 0;
+
+				try {
+					patchAll(worker);
+				} finally {
+					worker.close();
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (liveWorkers.decrementAndGet() == 0) {
+				// Nothing is left to take the rest of the jars
+				for (Task task = tasks.poll(); task != null; task = tasks.poll()) {
+					finish(task, null, "No worker could be started", 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends jars to a worker until there are none left, or the worker exits.
+	 */
+	private void patchAll(Worker worker) throws InterruptedException {
+		while (remaining.get() > 0) {
+			// Jars of a worker that exits are put back, so the queue being empty doesn't mean every jar is done
+			Task task = tasks.poll(100, TimeUnit.MILLISECONDS);
+
+			if (task == null) {
+				continue;
+			}
+
+			task.attempts++;
+
+			ShardMessage result;
+
+			try {
+				result = worker.patch(task.jar);
+			} catch (IOException ex) {
+				Patchwork.LOGGER.error("Worker %s failed while patching %s: %s", worker.index, task.jar, ex.getMessage());
+
+				if (task.attempts < maxAttempts) {
+					tasks.add(task);
+				} else {
+					finish(task, null, ex.getMessage(), 0);
+				}
+
+				return;
+			}
+
+			finish(task, result.modId, result.error, result.millis);
+		}
+	}
+
+	private void finish(Task task, String modId, String error, long millis) {
+		synchronized (entries) {
+			entries.add(new ShardReport.Entry(task.jar, modId, error, task.attempts, millis));
+		}
+
+		remaining.decrementAndGet();
+	}
+
+	private List<String> getCommand() {
+		List<String> command = new ArrayList<>();
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		// Let an out of memory error take the worker down, rather than leave it in an unknown state
+		command.add("-XX:+ExitOnOutOfMemoryError");
+		// Split the cores between the workers instead of having every worker use all of them
+		command.add("-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + threads);
+
+		String heap = System.getProperty("patchwork:shard_heap");
+
+		if (heap != null) {
+			command.add("-Xmx" + heap);
+		}
+
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith("patchwork") && !name.equals("patchwork:shard_workers")) {
+				command.add("-D" + name + "=" + System.getProperty(name));
+			}
+		}
+
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ShardWorker.class.getName());
+
+		return command;
+	}
+
+	private static class Task {
+		private final String jar;
+		private int attempts;
+
+		private Task(String jar) {
+			this.jar = jar;
+		}
+	}
+
+	private class Worker {
+		private final int index;
+		private final Process process;
+		private final PrintStream input;
+		private final BufferedReader output;
+
+		/**
+		 * Starts a worker, and waits for it to be ready.
+		 */
+		private Worker(int index, Path hierarchy) throws IOException {
+			this.index = index;
+			this.process = new ProcessBuilder(getCommand())
+					.directory(workingDir.toFile())
+					.redirectError(ProcessBuilder.Redirect.INHERIT)
+					.start();
+			this.input = new PrintStream(process.getOutputStream(), true, "UTF-8");
+			this.output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+			ShardMessage init = ShardMessage.of(ShardMessage.INIT);
+			init.hierarchy = hierarchy.toString();
+
+			try {
+				if (!send(init).type.equals(ShardMessage.READY)) {
+					throw new IOException("Worker did not get ready");
+				}
+			} catch (IOException ex) {
+				close();
+
+				throw ex;
+			}
+		}
+
+		private ShardMessage patch(String jar) throws IOException {
+			ShardMessage patch = ShardMessage.of(ShardMessage.PATCH);
+			patch.jar = jar;
+
+			return send(patch);
+		}
+
+		private ShardMessage send(ShardMessage message) throws IOException {
+			input.println(gson.toJson(message));
+
+			String line = output.readLine();
+
+			if (line == null) {
+				try {
+					throw new IOException("Worker exited with code " + process.waitFor());
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+
+					throw new IOException("Worker exited", ex);
+				}
+			}
+
+			ShardMessage response;
+
+			try {
+				response = gson.fromJson(line, ShardMessage.class);
+			} catch (JsonParseException ex) {
+				// Something other than a message was written to standard output, so the worker can't be trusted
+				throw new IOException("Worker sent an invalid message: " + ex.getMessage(), ex);
+			}
+
+			if (response == null || response.type == null) {
+				throw new IOException("Worker sent an empty message");
+			}
+
+			return response;
+		}
+
+		private void close() {
+			// Closing standard input tells the worker to exit
+			input.close();
+
+			try {
+				if (!process.waitFor(30, TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+				}
+			} catch (InterruptedException ex) {
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.patchworkmc.shard;
+
+/**
+ * A message between {@link ShardCoordinator} and {@link ShardWorker}, sent as a single line of JSON.
+ */
+class ShardMessage {
+	static final String INIT = "init";
+	static final String READY = "ready";
+	static final String PATCH = "patch";
+	static final String RESULT = "result";
+
+	String type;
+	// init: the snapshot of the class hierarchy of the batch, see ClassHierarchy#write
+	String hierarchy;
+	// patch and result: the jar to patch
+	String jar;
+	// result: the id of the patched mod, or the error if patching failed
+	String modId;
+	String error;
+	long millis;
+
+	static ShardMessage of(String type) {
+		ShardMessage message = new ShardMessage();
+		message.type = type;
+
+		return message;
+	}
+}
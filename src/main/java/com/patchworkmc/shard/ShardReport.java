@@ -0,0 +1,90 @@
+package com.patchworkmc.shard;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.gson.GsonBuilder;
+
+import com.patchworkmc.Patchwork;
+
+/**
+ * The merged results of every worker of a {@link ShardCoordinator}, with one entry per jar.
+ */
+public class ShardReport {
+	private final List<Entry> entries;
+	private final long millis;
+
+	ShardReport(List<Entry> entries, long millis) {
+		this.entries = new ArrayList<>(entries);
+		this.millis = millis;
+
+		// Workers finish in any order, so sort the entries for a stable report
+		this.entries.sort(Comparator.comparing(entry -> entry.jar));
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public long getFailureCount() {
+		return entries.stream().filter(entry -> entry.error != null).count();
+	}
+
+	void log() {
+		long patchMillis = entries.stream().mapToLong(entry -> entry.millis).sum();
+
+		Patchwork.LOGGER.info("Patched %s of %s jars in %s ms (%s ms spent in workers)", entries.size() - getFailureCount(), entries.size(), millis, patchMillis);
+
+		for (Entry entry : entries) {
+			if (entry.error != null) {
+				Patchwork.LOGGER.error("Failed to patch %s after %s attempts: %s", entry.jar, entry.attempts, entry.error);
+			}
+		}
+	}
+
+	public void write(Path path) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(this, writer);
+		}
+	}
+
+	public static class Entry {
+		private final String jar;
+		private final String modId;
+		private final String error;
+		private final int attempts;
+		private final long millis;
+
+		Entry(String jar, String modId, String error, int attempts, long millis) {
+			this.jar = jar;
+			this.modId = modId;
+			this.error = error;
+			this.attempts = attempts;
+			this.millis = millis;
+		}
+
+		public String getJar() {
+			return jar;
+		}
+
+		/**
+		 * @return the id of the patched mod, or null if patching failed
+		 */
+		public String getModId() {
+			return modId;
+		}
+
+		/**
+		 * @return why patching failed, or null if it didn't
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+}
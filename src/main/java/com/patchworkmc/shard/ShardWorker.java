@@ -0,0 +1,63 @@
+package com.patchworkmc.shard;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import com.google.gson.Gson;
+import org.apache.logging.log4j.Level;
+
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.transformer.ClassHierarchy;
+
+/**
+ * A worker process of a {@link ShardCoordinator}, which patches the jars it is sent one at a time.
+ *
+ * <p>Messages are read from standard input and written to standard output, one {@link ShardMessage} per line. The log
+ * goes to standard error instead.</p>
+ */
+public class ShardWorker {
+	public static void main(String[] args) throws Exception {
+		// Swap the streams before anything is logged, so that the console appender is set up on standard error
+		PrintStream output = new PrintStream(System.out, true, "UTF-8");
+		System.setOut(System.err);
+
+		Gson gson = new Gson();
+		Patchwork patchwork = Patchwork.create(Paths.get(System.getProperty("user.dir")));
+		BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		ClassHierarchy hierarchy = null;
+
+		for (String line = input.readLine(); line != null; line = input.readLine()) {
+			ShardMessage message = gson.fromJson(line, ShardMessage.class);
+
+			if (message.type.equals(ShardMessage.INIT)) {
+				// The coordinator indexed the batch once, so that every worker doesn't have to
+				hierarchy = ClassHierarchy.read(Paths.get(message.hierarchy));
+
+				output.println(gson.toJson(ShardMessage.of(ShardMessage.READY)));
+			} else if (message.type.equals(ShardMessage.PATCH)) {
+				output.println(gson.toJson(patch(patchwork, hierarchy, message.jar)));
+			}
+		}
+	}
+
+	private static ShardMessage patch(Patchwork patchwork, ClassHierarchy hierarchy, String jar) {
+		ShardMessage result = ShardMessage.of(ShardMessage.RESULT);
+		long start = System.nanoTime();
+
+		result.jar = jar;
+
+		try {
+			result.modId = patchwork.patchMod(Paths.get(jar), hierarchy);
+		} catch (Exception ex) {
+			Patchwork.LOGGER.throwing(Level.ERROR, ex);
+			result.error = ex.toString();
+		}
+
+		result.millis = (System.nanoTime() - start) / 1_000_000;
+
+		return result;
+	}
+}
@@ -0,0 +1,528 @@
+package com.patchworkmc.transformer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.CodeSource;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.Level;
+
+import com.patchworkmc.Diagnostics;
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.access.ClassAccessTransformations;
+import com.patchworkmc.annotation.AnnotationStorage;
+import com.patchworkmc.event.EventBusSubscriber;
+import com.patchworkmc.event.SubscribeEvent;
+import com.patchworkmc.mapping.remapper.PatchworkRemapper;
+import com.patchworkmc.objectholder.ObjectHolder;
+
+/**
+ * A cache of patched classes, keyed on a hash of the original bytes of the class, the mappings, the redirect table, and
+ * the version of Patchwork. The same class shaded into many mods, or patched again on a later run, is only patched once.
+ *
+ * <p>Entries are kept in memory up to a size limit, evicting the least recently used, and are also written to a
+ * directory so that they outlive the process. The directory has a size limit of its own: once it is exceeded, the
+ * entries that were least recently used (by modification time, which is updated on every hit) are deleted until it is
+ * back under three quarters of the limit. Failing to read or write the directory only makes the cache miss.</p>
+ *
+ * <p>An entry holds the class as it was patched, before its access changes are applied, along with the object holders,
+ * event subscribers and access changes found in it, so that a hit can generate the same shims and apply the same
+ * access changes as patching the class would. The diagnostics reported while patching the class are kept as well, and
+ * reported again on a hit.</p>
+ *
+ * <p>A development build of Patchwork has no version, so a hash of its own classes is used in its place. If those
+ * can't be read, entries are only kept in memory, as an entry written by one build could otherwise be used by another
+ * that patches the class differently.</p>
+ */
+public class ClassCache {
+	// Bumped whenever the format of the entries or the output of the transformer changes
+	private static final int FORMAT_VERSION = 3;
+
+	// Null if entries are only kept in memory
+	private final Path directory;
+	private final long maxMemoryBytes;
+	private final long maxDiskBytes;
+	private final byte[] salt;
+	private final Map<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+	// The size of the directory, or -1 until it is first measured. Other processes may share the directory, so this is
+	// only an estimate, and it is measured again whenever entries are evicted.
+	private long diskBytes = -1;
+
+	/**
+	 * @param directory      the directory to keep entries in
+	 * @param maxMemoryBytes the total size of the patched classes to keep in memory
+	 * @param maxDiskBytes   the total size of the entries to keep in the directory
+	 * @param remapper       the remapper classes are patched with, whose mappings are part of the key
+	 */
+	public ClassCache(Path directory, long maxMemoryBytes, long maxDiskBytes, PatchworkRemapper remapper) {
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxDiskBytes = maxDiskBytes;
+
+		String version = Patchwork.class.getPackage().getImplementationVersion();
+
+		if (version == null) {
+			version = hashCodeSource();
+		}
+
+		if (version == null) {
+			Patchwork.LOGGER.warn("Patchwork has no version and its classes could not be read, so patched classes are only cached in memory");
+
+			this.directory = null;
+			version = "unknown";
+		} else {
+			this.directory = directory;
+		}
+
+		String redirects = "/redirects/" + Patchwork.getMinecraftVersion() + ".json";
+
+		// Only the diagnostics at enabled levels are kept in an entry, so an entry written with fewer levels enabled
+		// would report too little on a hit
+		long enabledLevels = Stream.of(Level.ERROR, Level.WARN, Level.INFO, Level.DEBUG, Level.TRACE)
+				.filter(Patchwork.LOGGER::isEnabled).count();
+
+		// Anything that changes what a class is patched into has to be part of the key
+		String salt = String.join("\0", Integer.toString(FORMAT_VERSION), version, Patchwork.getMinecraftVersion(),
+				remapper.getFingerprint(), hashResource(redirects), Long.toString(enabledLevels),
+				System.getProperty("patchwork:annotation_filter", ""));
+
+		this.salt = salt.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return a hash of the jar or directory the classes of Patchwork are loaded from, or null if it can't be read
+	 */
+	private static String hashCodeSource() {
+		CodeSource codeSource = Patchwork.class.getProtectionDomain().getCodeSource();
+
+		if (codeSource == null) {
+			return null;
+		}
+
+		try {
+			Path location = Paths.get(codeSource.getLocation().toURI());
+			MessageDigest digest = createDigest();
+
+			if (Files.isDirectory(location)) {
+				try (Stream<Path> paths = Files.walk(location)) {
+					for (Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+						digest.update(location.relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+
+						try (InputStream stream = Files.newInputStream(path)) {
+							update(digest, stream);
+						}
+					}
+				}
+			} else {
+				try (InputStream stream = Files.newInputStream(location)) {
+					update(digest, stream);
+				}
+			}
+
+			return toHex(digest.digest());
+		} catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+			Patchwork.LOGGER.debug("Failed to hash the classes of Patchwork: %s", ex);
+
+			return null;
+		}
+	}
+
+	private static String hashResource(String path) {
+		MessageDigest digest = createDigest();
+
+		try (InputStream stream = ClassCache.class.getResourceAsStream(path)) {
+			if (stream == null) {
+				throw new IllegalArgumentException("Missing resource " + path);
+			}
+
+			update(digest, stream);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to read " + path, ex);
+		}
+
+		return toHex(digest.digest());
+	}
+
+	private static void update(MessageDigest digest, InputStream stream) throws IOException {
+		byte[] buffer = new byte[8192];
+
+		for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+			digest.update(buffer, 0, read);
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is always supported", ex);
+		}
+	}
+
+	private static String toHex(byte[] hash) {
+		StringBuilder hex = new StringBuilder();
+
+		for (byte b : hash) {
+			hex.append(String.format("%02x", b));
+		}
+
+		return hex.toString();
+	}
+
+	/**
+	 * @return the cache in the {@code cache/classes} directory under the data directory if the
+	 * {@code patchwork:class_cache} system property is set to true, or null otherwise. The sizes of the memory and disk
+	 * tiers are set in megabytes by {@code patchwork:class_cache_memory_mb} and {@code patchwork:class_cache_disk_mb}.
+	 */
+	public static ClassCache fromProperties(Path dataDir, PatchworkRemapper remapper) {
+		if (!System.getProperty("patchwork:class_cache", "false").equals("true")) {
+			return null;
+		}
+
+		long maxMemoryBytes = Long.getLong("patchwork:class_cache_memory_mb", 64) * 1024 * 1024;
+		long maxDiskBytes = Long.getLong("patchwork:class_cache_disk_mb", 512) * 1024 * 1024;
+
+		return new ClassCache(dataDir.resolve("cache/classes"), maxMemoryBytes, maxDiskBytes, remapper);
+	}
+
+	/**
+	 * @param content  the original bytes of the class
+	 * @param unmapped whether the class is remapped as part of patching, see {@link PatchworkTransformer#acceptUnmapped}
+	 */
+	public String key(byte[] content, boolean unmapped) {
+		MessageDigest digest = createDigest();
+
+		digest.update(salt);
+		digest.update((byte) (unmapped ? 1 : 0));
+		digest.update(content);
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return the entry for the key, or null if there is none
+	 */
+	public Entry get(String key) {
+		synchronized (memory) {
+			Entry entry = memory.get(key);
+
+			if (entry != null) {
+				return entry;
+			}
+		}
+
+		if (directory == null) {
+			return null;
+		}
+
+		Path file = getFile(key);
+
+		try {
+			Entry entry = Entry.read(Files.readAllBytes(file));
+			remember(key, entry);
+
+			// Marks the entry as recently used, so that it is evicted last
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+
+			return entry;
+		} catch (NoSuchFileException ex) {
+			return null;
+		} catch (IOException ex) {
+			Patchwork.LOGGER.debug("Ignoring unreadable class cache entry %s: %s", file, ex);
+
+			return null;
+		}
+	}
+
+	public void put(String key, Entry entry) {
+		remember(key, entry);
+
+		if (directory == null) {
+			return;
+		}
+
+		Path file = getFile(key);
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			// Write to a temporary file first, so that an entry is never seen half written
+			Path temporary = Files.createTempFile(file.getParent(), key, ".tmp");
+
+			try {
+				byte[] data = entry.write();
+				Files.write(temporary, data);
+
+				try {
+					Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException ex) {
+					Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				charge(data.length);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		} catch (IOException ex) {
+			Patchwork.LOGGER.debug("Failed to write class cache entry %s: %s", file, ex);
+		}
+	}
+
+	/**
+	 * Adds a newly written entry to the size of the directory, and evicts entries if that is over the limit.
+	 */
+	private synchronized void charge(long bytes) throws IOException {
+		if (diskBytes < 0) {
+			diskBytes = measure().stream().mapToLong(file -> file.size).sum();
+		} else {
+			diskBytes += bytes;
+		}
+
+		if (diskBytes <= maxDiskBytes) {
+			return;
+		}
+
+		List<CachedFile> files = measure();
+		files.sort(Comparator.comparing(file -> file.lastModified));
+
+		long remaining = files.stream().mapToLong(file -> file.size).sum();
+		long target = maxDiskBytes / 4 * 3;
+
+		// Evicting down to a lower mark than the limit means that the directory is not walked again on the next write
+		for (CachedFile file : files) {
+			if (remaining <= target) {
+				break;
+			}
+
+			if (Files.deleteIfExists(file.path)) {
+				synchronized (memory) {
+					String name = file.path.getFileName().toString();
+					Entry evicted = memory.remove(name.substring(0, name.length() - ".bin".length()));
+
+					if (evicted != null) {
+						memoryBytes -= evicted.patched.length;
+					}
+				}
+			}
+
+			remaining -= file.size;
+		}
+
+		Patchwork.LOGGER.debug("Evicted class cache entries from %s, %d bytes remain", directory, remaining);
+
+		diskBytes = remaining;
+	}
+
+	private List<CachedFile> measure() throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return new ArrayList<>();
+		}
+
+		try (Stream<Path> paths = Files.walk(directory, 2)) {
+			List<CachedFile> files = new ArrayList<>();
+
+			for (Path path : paths.filter(path -> path.toString().endsWith(".bin")).collect(Collectors.toList())) {
+				try {
+					files.add(new CachedFile(path, Files.size(path), Files.getLastModifiedTime(path)));
+				} catch (NoSuchFileException ex) {
+					// Evicted by another process in the meantime
+				}
+			}
+
+			return files;
+		}
+	}
+
+	private void remember(String key, Entry entry) {
+		synchronized (memory) {
+			if (memory.put(key, entry) == null) {
+				memoryBytes += entry.patched.length;
+			}
+
+			while (memoryBytes > maxMemoryBytes && !memory.isEmpty()) {
+				Map.Entry<String, Entry> eldest = memory.entrySet().iterator().next();
+
+				memoryBytes -= eldest.getValue().patched.length;
+				memory.remove(eldest.getKey());
+			}
+		}
+	}
+
+	private static class CachedFile {
+		private final Path path;
+		private final long size;
+		private final FileTime lastModified;
+
+		private CachedFile(Path path, long size, FileTime lastModified) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private Path getFile(String key) {
+		// Spread the entries over subdirectories, so that no single directory gets too large
+		return directory.resolve(key.substring(0, 2)).resolve(key + ".bin");
+	}
+
+	/**
+	 * A patched class, along with what was found in it that is needed once the whole mod has been patched.
+	 */
+	public static class Entry {
+		final String name;
+		final byte[] patched;
+		final List<String> superClasses;
+		final List<String> modIds;
+		final AnnotationStorage annotations;
+		final List<ObjectHolder> objectHolders;
+		final List<SubscribeEvent> subscribeEvents;
+		final EventBusSubscriber eventBusSubscriber;
+		final ClassAccessTransformations accessTransformations;
+		final List<Diagnostics.Report> reports;
+
+		/**
+		 * @param patched            the patched class, before its access changes are applied
+		 * @param eventBusSubscriber the {@code @EventBusSubscriber} annotation of the class, or null if it has none
+		 * @param reports            the diagnostics reported while patching the class
+		 */
+		Entry(String name, byte[] patched, List<String> superClasses, List<String> modIds, AnnotationStorage annotations,
+				List<ObjectHolder> objectHolders, List<SubscribeEvent> subscribeEvents, EventBusSubscriber eventBusSubscriber,
+				ClassAccessTransformations accessTransformations, List<Diagnostics.Report> reports) {
+			this.name = name;
+			this.patched = patched;
+			this.superClasses = superClasses;
+			this.modIds = modIds;
+			this.annotations = annotations;
+			this.objectHolders = objectHolders;
+			this.subscribeEvents = subscribeEvents;
+			this.eventBusSubscriber = eventBusSubscriber;
+			this.accessTransformations = accessTransformations;
+			this.reports = reports;
+		}
+
+		private byte[] write() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(patched.length + 256);
+			DataOutputStream output = new DataOutputStream(bytes);
+
+			output.writeInt(FORMAT_VERSION);
+			output.writeUTF(name);
+			output.writeInt(patched.length);
+			output.write(patched);
+			writeStrings(output, superClasses);
+			writeStrings(output, modIds);
+			annotations.write(output);
+			output.writeInt(objectHolders.size());
+
+			for (ObjectHolder holder : objectHolders) {
+				holder.write(output);
+			}
+
+			output.writeInt(subscribeEvents.size());
+
+			for (SubscribeEvent subscribeEvent : subscribeEvents) {
+				subscribeEvent.write(output);
+			}
+
+			output.writeBoolean(eventBusSubscriber != null);
+
+			if (eventBusSubscriber != null) {
+				eventBusSubscriber.write(output);
+			}
+
+			accessTransformations.write(output);
+			output.writeInt(reports.size());
+
+			for (Diagnostics.Report report : reports) {
+				report.write(output);
+			}
+
+			return bytes.toByteArray();
+		}
+
+		private static Entry read(byte[] data) throws IOException {
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+
+			if (input.readInt() != FORMAT_VERSION) {
+				throw new IOException("Unsupported class cache entry version");
+			}
+
+			String name = input.readUTF();
+			byte[] patched = new byte[input.readInt()];
+			input.readFully(patched);
+			List<String> superClasses = readStrings(input);
+			List<String> modIds = readStrings(input);
+			AnnotationStorage annotations = AnnotationStorage.read(input);
+
+			int holderCount = input.readInt();
+			List<ObjectHolder> objectHolders = new ArrayList<>(holderCount);
+
+			for (int i = 0; i < holderCount; i++) {
+				objectHolders.add(ObjectHolder.read(input));
+			}
+
+			int subscribeEventCount = input.readInt();
+			List<SubscribeEvent> subscribeEvents = new ArrayList<>(subscribeEventCount);
+
+			for (int i = 0; i < subscribeEventCount; i++) {
+				subscribeEvents.add(SubscribeEvent.read(input));
+			}
+
+			EventBusSubscriber eventBusSubscriber = input.readBoolean() ? EventBusSubscriber.read(input) : null;
+			ClassAccessTransformations accessTransformations = ClassAccessTransformations.read(input);
+
+			int reportCount = input.readInt();
+			List<Diagnostics.Report> reports = new ArrayList<>(reportCount);
+
+			for (int i = 0; i < reportCount; i++) {
+				reports.add(Diagnostics.Report.read(input));
+			}
+
+			return new Entry(name, patched, superClasses, modIds, annotations, objectHolders, subscribeEvents,
+					eventBusSubscriber, accessTransformations, reports);
+		}
+
+		private static void writeStrings(DataOutputStream output, List<String> strings) throws IOException {
+			output.writeInt(strings.size());
+
+			for (String string : strings) {
+				// The superclass of java/lang/Object is null, although it is never patched
+				output.writeUTF(string == null ? "" : string);
+			}
+		}
+
+		private static List<String> readStrings(DataInputStream input) throws IOException {
+			int count = input.readInt();
+			List<String> strings = new ArrayList<>(count);
+
+			for (int i = 0; i < count; i++) {
+				String string = input.readUTF();
+
+				strings.add(string.isEmpty() ? null : string);
+			}
+
+			return strings;
+		}
+	}
+}
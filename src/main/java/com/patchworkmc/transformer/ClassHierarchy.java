@@ -0,0 +1,272 @@
+package com.patchworkmc.transformer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.Level;
+import org.objectweb.asm.ClassReader;
+
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.jar.RawZipFile;
+
+/**
+ * An index of the direct supertypes of the classes of a mod, with the transitive supertypes of each class computed
+ * once and then cached.
+ *
+ * <p>An index may fall back to a parent index for classes it does not contain, such as the batch-wide index built by
+ * {@link #index(Collection, UnaryOperator)}. Classes in neither, such as JDK classes, are treated as having no
+ * supertypes.</p>
+ */
+public class ClassHierarchy {
+	private final Map<String, List<String>> supertypes = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> ancestors = new ConcurrentHashMap<>();
+	private final ClassHierarchy parent;
+
+	public ClassHierarchy() {
+		this(null);
+	}
+
+	/**
+	 * @param parent the index to look classes up in when they are not in this one, which must not be modified while
+	 *               this index is in use
+	 */
+	public ClassHierarchy(ClassHierarchy parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Builds an index of every class in a set of jars, reading the jars and their classes in parallel.
+	 *
+	 * <p>Only the header of each class is parsed. Jars that cannot be read are skipped with an error.</p>
+	 *
+	 * @param jars   the jars to index
+	 * @param naming maps the class names in the jars to the names the index should use, such as intermediary names
+	 */
+	public static ClassHierarchy index(Collection<Path> jars, UnaryOperator<String> naming) {
+		return index(jars, naming, null);
+	}
+
+	/**
+	 * Builds an index of every class in a set of jars, like {@link #index(Collection, UnaryOperator)}, that falls back
+	 * to a parent index.
+	 */
+	public static ClassHierarchy index(Collection<Path> jars, UnaryOperator<String> naming, ClassHierarchy parent) {
+		ClassHierarchy hierarchy = new ClassHierarchy(parent);
+
+		jars.parallelStream().forEach(jar -> {
+			try {
+				hierarchy.indexJar(jar, naming);
+			} catch (IOException | UncheckedIOException ex) {
+				Patchwork.LOGGER.error("Failed to index the classes of %s", jar);
+				Patchwork.LOGGER.throwing(Level.ERROR, ex);
+			}
+		});
+
+		return hierarchy;
+	}
+
+	/**
+	 * Builds an index of every class in a single jar that is already open, such as one held in memory. See
+	 * {@link #index(Collection, UnaryOperator, ClassHierarchy)}.
+	 */
+	public static ClassHierarchy index(RawZipFile jar, UnaryOperator<String> naming, ClassHierarchy parent) {
+		ClassHierarchy hierarchy = new ClassHierarchy(parent);
+
+		jar.getEntries().parallelStream().filter(entry -> entry.getName().endsWith(".class")).forEach(entry -> {
+			try {
+				hierarchy.indexClass(jar.readContent(entry), naming);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+
+		return hierarchy;
+	}
+
+	private void indexJar(Path jar, UnaryOperator<String> naming) throws IOException {
+		URI uri = URI.create("jar:" + jar.toUri());
+
+		try (FileSystem fs = FileSystems.newFileSystem(uri, Collections.emptyMap());
+				Stream<Path> files = Files.walk(fs.getPath("/"))) {
+			List<Path> classFiles = files.filter(file -> file.toString().endsWith(".class")).collect(Collectors.toList());
+
+			classFiles.parallelStream().forEach(classFile -> {
+				try {
+					indexClass(Files.readAllBytes(classFile), naming);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		}
+	}
+
+	private void indexClass(byte[] content, UnaryOperator<String> naming) {
+		ClassReader reader = new ClassReader(content);
+		List<String> mapped = new ArrayList<>();
+
+		if (reader.getSuperName() != null) {
+			mapped.add(naming.apply(reader.getSuperName()));
+		}
+
+		Arrays.stream(reader.getInterfaces()).map(naming).forEach(mapped::add);
+
+		// Written directly, since clearing the ancestor cache for each class would be pointless
+		supertypes.put(naming.apply(reader.getClassName()), mapped);
+	}
+
+	/**
+	 * Writes every class of this index and its parents to a file, which can be read back with {@link #read(Path)} by
+	 * another process instead of indexing the same jars again.
+	 */
+	public void write(Path file) throws IOException {
+		Map<String, List<String>> classes = new HashMap<>();
+
+		// Parents first, so that a class in this index replaces the same class in a parent
+		for (ClassHierarchy hierarchy : getChain()) {
+			classes.putAll(hierarchy.supertypes);
+		}
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			output.writeInt(classes.size());
+
+			for (Map.Entry<String, List<String>> entry : classes.entrySet()) {
+				output.writeUTF(entry.getKey());
+				output.writeInt(entry.getValue().size());
+
+				for (String supertype : entry.getValue()) {
+					output.writeUTF(supertype);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an index written by {@link #write(Path)}. The index has no parent, since every class of the parents of the
+	 * written index is in the file.
+	 */
+	public static ClassHierarchy read(Path file) throws IOException {
+		ClassHierarchy hierarchy = new ClassHierarchy();
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			int count = input.readInt();
+
+			for (int i = 0; i < count; i++) {
+				String name = input.readUTF();
+				int supertypeCount = input.readInt();
+				List<String> supertypes = new ArrayList<>(supertypeCount);
+
+				for (int j = 0; j < supertypeCount; j++) {
+					supertypes.add(input.readUTF());
+				}
+
+				hierarchy.supertypes.put(name, supertypes);
+			}
+		}
+
+		return hierarchy;
+	}
+
+	/**
+	 * @return this index and its parents, starting with the outermost parent
+	 */
+	private List<ClassHierarchy> getChain() {
+		List<ClassHierarchy> chain = new ArrayList<>();
+
+		for (ClassHierarchy hierarchy = this; hierarchy != null; hierarchy = hierarchy.parent) {
+			chain.add(0, hierarchy);
+		}
+
+		return chain;
+	}
+
+	/**
+	 * @param name       the internal name of the class
+	 * @param supertypes the superclass followed by the interfaces of the class
+	 */
+	public void addClass(String name, List<String> supertypes) {
+		this.supertypes.put(name, supertypes);
+		this.ancestors.clear();
+	}
+
+	/**
+	 * Adds every class of another index to this one, for merging indices that were filled concurrently.
+	 */
+	public void addAll(ClassHierarchy other) {
+		this.supertypes.putAll(other.supertypes);
+		this.ancestors.clear();
+	}
+
+	public boolean contains(String name) {
+		return supertypes.containsKey(name) || (parent != null && parent.contains(name));
+	}
+
+	/**
+	 * @return the superclass followed by the interfaces of the class, or an empty list if it is not in the index or its
+	 * parent
+	 */
+	public List<String> getSupertypes(String name) {
+		List<String> result = supertypes.get(name);
+
+		if (result != null) {
+			return result;
+		}
+
+		return parent != null ? parent.getSupertypes(name) : Collections.emptyList();
+	}
+
+	/**
+	 * Gets every supertype of a class, directly or indirectly. Supertypes that are not in the index are included, but
+	 * their own supertypes are not known.
+	 *
+	 * @return the supertypes in depth-first order, not including the class itself
+	 */
+	public Set<String> getAncestors(String name) {
+		Set<String> cached = ancestors.get(name);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		// This recurses through getAncestors rather than computeIfAbsent, since a ConcurrentHashMap can't be modified
+		// from inside of its own computeIfAbsent.
+		Set<String> result = new LinkedHashSet<>();
+
+		for (String supertype : getSupertypes(name)) {
+			if (supertype != null) {
+				result.add(supertype);
+				result.addAll(getAncestors(supertype));
+			}
+		}
+
+		result = Collections.unmodifiableSet(result);
+		cached = ancestors.putIfAbsent(name, result);
+
+		return cached != null ? cached : result;
+	}
+
+	public boolean isSubtypeOf(String name, String supertype) {
+		return getAncestors(name).contains(supertype);
+	}
+}
@@ -0,0 +1,176 @@
+package com.patchworkmc.transformer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+
+import com.patchworkmc.Patchwork;
+import com.patchworkmc.event.EventHandlerScanner;
+import com.patchworkmc.event.EventSubclassTransformer;
+import com.patchworkmc.mapping.remapper.PatchworkRemapper;
+import com.patchworkmc.objectholder.ObjectHolderScanner;
+import com.patchworkmc.patch.RedirectTable;
+
+/**
+ * Decides which stages of the patching pipeline apply to a class by looking at its constant pool, without parsing
+ * any fields or methods.
+ *
+ * <p>Every annotation descriptor, referenced class, member name and string literal of a class is stored in its
+ * constant pool, so if none of the names a stage reacts to are present, that stage can not change anything.
+ * UTF-8 entries are compared byte by byte against the expected names, so no strings are decoded for the common
+ * case of a class that needs no patching.</p>
+ */
+public final class ConstantPoolScanner {
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_STRING = 8;
+
+	private static final List<Marker> MARKERS = new ArrayList<>();
+
+	static {
+		addMarker(Stage.ANNOTATIONS, "RuntimeVisibleAnnotations");
+		addMarker(Stage.ANNOTATIONS, "RuntimeInvisibleAnnotations");
+
+		addMarker(Stage.OBJECT_HOLDERS, ObjectHolderScanner.OBJECT_HOLDER);
+
+		addMarker(Stage.EVENT_HANDLERS, EventHandlerScanner.EVENT_BUS_SUBSCRIBER);
+		addMarker(Stage.EVENT_HANDLERS, EventHandlerScanner.SUBSCRIBE_EVENT);
+
+		addMarker(Stage.EVENT_SUBCLASSES, EventSubclassTransformer.CANCELABLE_ANNOTATION);
+		addMarker(Stage.EVENT_SUBCLASSES, EventSubclassTransformer.HAS_RESULT_ANNOTATION);
+		addMarker(Stage.EVENT_SUBCLASSES, EventSubclassTransformer.GET_LISTENER_LIST);
+		addMarker(Stage.EVENT_SUBCLASSES, EventSubclassTransformer.GET_PARENT_LISTENER_LIST);
+
+		for (String owner : RedirectTable.forVersion(Patchwork.getMinecraftVersion()).getOwners()) {
+			addMarker(Stage.REDIRECTS, owner);
+		}
+	}
+
+	private ConstantPoolScanner() {
+		// NO-OP
+	}
+
+	private static void addMarker(Stage stage, String value) {
+		MARKERS.add(new Marker(stage, value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Scans the constant pool of a class.
+	 *
+	 * @param bytes    the bytes of the class
+	 * @param reader   a reader created from those bytes, which is only used to locate the constant pool entries
+	 * @param remapper the remapper used by {@link com.patchworkmc.patch.StringConstantRemapper}
+	 * @return the stages that may need to visit this class, empty if the class can be passed through untouched
+	 */
+	public static EnumSet<Stage> scan(byte[] bytes, ClassReader reader, PatchworkRemapper.Naive remapper) {
+		EnumSet<Stage> stages = EnumSet.noneOf(Stage.class);
+		char[] buffer = null;
+
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+
+			// The second slot of a long or a double has no entry.
+			if (offset == 0) {
+				continue;
+			}
+
+			int tag = bytes[offset - 1];
+
+			if (tag == CONSTANT_UTF8) {
+				int length = reader.readUnsignedShort(offset);
+
+				for (Marker marker : MARKERS) {
+					if (!stages.contains(marker.stage) && marker.matches(bytes, offset + 2, length)) {
+						stages.add(marker.stage);
+					}
+				}
+			} else if (tag == CONSTANT_STRING && !stages.contains(Stage.STRING_CONSTANTS)) {
+				int utf8Offset = reader.getItem(reader.readUnsignedShort(offset));
+
+				if (isRemapCandidate(bytes, utf8Offset + 2, reader.readUnsignedShort(utf8Offset))) {
+					if (buffer == null) {
+						buffer = new char[reader.getMaxStringLength()];
+					}
+
+					if (needsRemapping(reader.readUTF8(offset, buffer), remapper)) {
+						stages.add(Stage.STRING_CONSTANTS);
+					}
+				}
+			}
+		}
+
+		return stages;
+	}
+
+	/**
+	 * Cheaply rejects strings that {@link com.patchworkmc.patch.StringConstantRemapper} could never change: anything
+	 * that is neither a srg member name nor contains a '/' like an internal class name does.
+	 */
+	private static boolean isRemapCandidate(byte[] bytes, int start, int length) {
+		if (startsWith(bytes, start, length, "field_") || startsWith(bytes, start, length, "func_")) {
+			return true;
+		}
+
+		for (int i = start; i < start + length; i++) {
+			if (bytes[i] == '/') {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean startsWith(byte[] bytes, int start, int length, String prefix) {
+		if (length < prefix.length()) {
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length(); i++) {
+			if (bytes[start + i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean needsRemapping(String value, PatchworkRemapper.Naive remapper) {
+		// Mirrors the cases handled by StringConstantRemapper
+		return value.startsWith("field_") || value.startsWith("func_") || !remapper.getClass(value).equals(value);
+	}
+
+	public enum Stage {
+		ANNOTATIONS,
+		OBJECT_HOLDERS,
+		EVENT_HANDLERS,
+		REDIRECTS,
+		EVENT_SUBCLASSES,
+		STRING_CONSTANTS
+	}
+
+	private static class Marker {
+		private final Stage stage;
+		private final byte[] value;
+
+		private Marker(Stage stage, byte[] value) {
+			this.stage = stage;
+			this.value = value;
+		}
+
+		private boolean matches(byte[] bytes, int start, int length) {
+			if (length != value.length) {
+				return false;
+			}
+
+			for (int i = 0; i < length; i++) {
+				if (bytes[start + i] != value[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+}
@@ -3,22 +3,27 @@ package com.patchworkmc.transformer;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.ClassNode;
 
+import com.patchworkmc.Diagnostics;
 import com.patchworkmc.Patchwork;
 import com.patchworkmc.access.AccessTransformation;
 import com.patchworkmc.access.ClassAccessTransformations;
@@ -29,22 +34,26 @@ import com.patchworkmc.event.EventBusSubscriber;
 import com.patchworkmc.event.EventSubclassTransformer;
 import com.patchworkmc.event.EventHandlerScanner;
 import com.patchworkmc.event.SubscribeEvent;
+import com.patchworkmc.event.generator.EventDispatcherGenerator;
 import com.patchworkmc.event.generator.InstanceEventRegistrarGenerator;
 import com.patchworkmc.event.generator.StaticEventRegistrarGenerator;
 import com.patchworkmc.event.generator.SubscribeEventGenerator;
 import com.patchworkmc.event.initialization.RegisterAutomaticSubscribers;
+import com.patchworkmc.event.initialization.RegisterEventDispatcher;
 import com.patchworkmc.event.initialization.RegisterEventRegistrars;
 import com.patchworkmc.event.EventSubscriptionChecker;
 import com.patchworkmc.patch.StringConstantRemapper;
+import com.patchworkmc.mapping.remapper.AsmRemapper;
 import com.patchworkmc.mapping.remapper.PatchworkRemapper;
 import com.patchworkmc.objectholder.ObjectHolder;
+import com.patchworkmc.objectholder.ObjectHolderApplierGenerator;
 import com.patchworkmc.objectholder.ObjectHolderGenerator;
 import com.patchworkmc.objectholder.ObjectHolderScanner;
+import com.patchworkmc.objectholder.initialization.RegisterObjectHolderApplier;
 import com.patchworkmc.objectholder.initialization.RegisterObjectHolders;
-import com.patchworkmc.patch.BlockSettingsTransformer;
-import com.patchworkmc.patch.ExtensibleEnumTransformer;
-import com.patchworkmc.patch.ItemGroupTransformer;
-import com.patchworkmc.patch.LevelGeneratorTypeTransformer;
+import com.patchworkmc.patch.RedirectTable;
+import com.patchworkmc.patch.RedirectTransformer;
+import com.patchworkmc.transformer.ConstantPoolScanner.Stage;
 import com.patchworkmc.transformer.initialization.ConstructTargetMod;
 
 public class PatchworkTransformer implements BiConsumer<String, byte[]> {
@@ -52,29 +61,213 @@ public class PatchworkTransformer implements BiConsumer<String, byte[]> {
 
 	private BiConsumer<String, byte[]> outputConsumer;
 	private PatchworkRemapper remapper;
+	private RedirectTable redirects = RedirectTable.forVersion(Patchwork.getMinecraftVersion());
 	private boolean finished;
-
-	private Queue<Map.Entry<String, ObjectHolder>> generatedObjectHolderEntries = new ConcurrentLinkedQueue<>(); // shimName -> ObjectHolder
-	private Queue<Map.Entry<String, String>> staticEventRegistrars = new ConcurrentLinkedQueue<>(); // shimName -> baseName
-	private Queue<Map.Entry<String, String>> instanceEventRegistrars = new ConcurrentLinkedQueue<>(); // shimName -> baseName
-	private Queue<Map.Entry<String, EventBusSubscriber>> eventBusSubscribers = new ConcurrentLinkedQueue<>(); // basename -> EventBusSubscriber
-	private Queue<Map.Entry<String, String>> modInfo = new ConcurrentLinkedQueue<>(); // modId -> clazz
-
-	private EventSubscriptionChecker checker = new EventSubscriptionChecker();
+	// Generate a single event dispatcher for the mod instead of a class per @SubscribeEvent method
+	private boolean consolidateEventShims;
+	// Generate a single object holder applier for the mod instead of a class per @ObjectHolder field
+	private boolean consolidateObjectHolders;
+
+	// Everything found while patching is collected per thread, so that classes can be patched concurrently without any
+	// shared state. The accumulators are merged and sorted in finish, so that the output does not depend on the order
+	// classes were patched in. They are kept by the transformer rather than in thread locals, so that pool threads that
+	// outlive the transformer don't keep them alive.
+	private final Map<Thread, Accumulator> accumulators = new ConcurrentHashMap<>();
+
+	private List<Map.Entry<String, ObjectHolder>> generatedObjectHolderEntries = new ArrayList<>(); // shimName -> ObjectHolder
+	private List<Map.Entry<String, String>> staticEventRegistrars = new ArrayList<>(); // shimName -> baseName
+	private List<Map.Entry<String, String>> instanceEventRegistrars = new ArrayList<>(); // shimName -> baseName
+	private List<Map.Entry<String, EventBusSubscriber>> eventBusSubscribers = new ArrayList<>(); // basename -> EventBusSubscriber
+	private List<Map.Entry<String, String>> modInfo = new ArrayList<>(); // modId -> clazz
+	private List<EventDispatcherGenerator.Subscriber> eventDispatcherSubscribers = new ArrayList<>();
+	private String eventDispatcherName;
+	private List<Map.Entry<String, ObjectHolder>> objectHolderApplierEntries = new ArrayList<>(); // targetClass -> ObjectHolder
+	private String objectHolderApplierName;
+
+	// The hierarchy of the classes of the mod, only complete once all classes are merged in finish
+	private ClassHierarchy hierarchy;
+	private EventSubscriptionChecker checker;
 	private AnnotationStorage annotationStorage;
+	private final Diagnostics diagnostics = new Diagnostics();
+	private final Map<Stage, AtomicInteger> stageCounts = new EnumMap<>(Stage.class);
+	private ClassCache cache;
 
 	/**
-	 * The main class transformer for Patchwork.
+	 * The main class transformer for Patchwork. Classes may be accepted from multiple threads at once.
 	**/
 	public PatchworkTransformer(BiConsumer<String, byte[]> outputConsumer, PatchworkRemapper remapper, AnnotationStorage annotationStorage) {
+		this(outputConsumer, remapper, annotationStorage, null);
+	}
+
+	/**
+	 * @param batchHierarchy an index of the classes outside of this mod, such as those of other mods and Minecraft, or
+	 *                       null if there is none
+	 */
+	public PatchworkTransformer(BiConsumer<String, byte[]> outputConsumer, PatchworkRemapper remapper, AnnotationStorage annotationStorage, ClassHierarchy batchHierarchy) {
 		this.outputConsumer = outputConsumer;
+		this.hierarchy = new ClassHierarchy(batchHierarchy);
+		this.checker = new EventSubscriptionChecker(hierarchy);
 		this.remapper = remapper;
 		this.finished = false;
+		this.consolidateEventShims = System.getProperty("patchwork:consolidate_event_shims", "false").equals("true");
+		this.consolidateObjectHolders = System.getProperty("patchwork:consolidate_object_holders", "false").equals("true");
 		this.annotationStorage = annotationStorage;
+
+		for (Stage stage : Stage.values()) {
+			stageCounts.put(stage, new AtomicInteger());
+		}
+	}
+
+	/**
+	 * @return the messages reported while patching, which are summarized once the mod is done
+	 */
+	public Diagnostics getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * @return how many classes each stage of the patch chain was applied to so far, not counting classes that were
+	 *         passed through untouched or taken from the cache
+	 */
+	public Map<Stage, Integer> getStageCounts() {
+		Map<Stage, Integer> counts = new EnumMap<>(Stage.class);
+		stageCounts.forEach((stage, count) -> counts.put(stage, count.get()));
+
+		return counts;
+	}
+
+	/**
+	 * @param cache the cache to look patched classes up in and store them to, or null to always patch classes
+	 */
+	public void setCache(ClassCache cache) {
+		this.cache = cache;
 	}
 
 	@Override
 	public void accept(String name, byte[] content) {
+		validateName(name);
+
+		ClassReader reader = new ClassReader(content);
+		EnumSet<Stage> stages = ConstantPoolScanner.scan(content, reader, remapper.getNaiveRemapper());
+		Accumulator found = accumulators.computeIfAbsent(Thread.currentThread(), thread -> new Accumulator());
+		ScannedClass scanned = new ScannedClass();
+
+		if (stages.isEmpty()) {
+			// Nothing in this class concerns Patchwork, pass it through byte-for-byte
+			scanned.superClasses.add(reader.getSuperName());
+			scanned.superClasses.addAll(Arrays.asList(reader.getInterfaces()));
+
+			finishClass(name, content, scanned, found);
+
+			return;
+		}
+
+		String cacheKey = cache != null ? cache.key(content, false) : null;
+
+		if (cacheKey != null && acceptCached(cacheKey, found)) {
+			return;
+		}
+
+		// Passing the reader lets the writer copy the constant pool, and copy methods that reach it unmodified
+		// straight from the original bytes instead of rebuilding them.
+		ClassWriter writer = new ClassWriter(reader, 0);
+
+		// None of the transformers change the shape of the operand stack, so the original (compressed) frames
+		// remain valid and there is no need to expand them.
+		reader.accept(createPatchChain(name, writer, stages, scanned, found), 0);
+
+		byte[] patched = writer.toByteArray();
+
+		store(cacheKey, name, patched, scanned);
+		finishClass(name, patched, scanned, found);
+	}
+
+	/**
+	 * Remaps a class that has not been remapped yet and patches it in the same pass, so that it is only read and
+	 * written once.
+	 *
+	 * @param content the bytes of the class, in the source namespace of the remapper
+	 * @param classRemapper the remapper from the source namespace to the namespace the patches expect
+	 */
+	public void acceptUnmapped(byte[] content, AsmRemapper classRemapper) {
+		Accumulator found = accumulators.computeIfAbsent(Thread.currentThread(), thread -> new Accumulator());
+		String cacheKey = cache != null ? cache.key(content, true) : null;
+
+		if (cacheKey != null && acceptCached(cacheKey, found)) {
+			return;
+		}
+
+		ClassReader reader = new ClassReader(content);
+		String name = classRemapper.map(reader.getClassName());
+
+		validateName(name);
+
+		ScannedClass scanned = new ScannedClass();
+
+		// The constant pool of the original class is full of names that are remapped, so it is not worth copying.
+		ClassWriter writer = new ClassWriter(0);
+
+		// The prescan looks for names that only exist after remapping, so every stage is used here.
+		ClassVisitor patchChain = createPatchChain(name, writer, EnumSet.allOf(Stage.class), scanned, found);
+
+		// Members that can't be remapped are reported along with the rest of the diagnostics of the mod
+		reader.accept(classRemapper.withDiagnostics(diagnosticsFor(scanned)).remapping(patchChain), 0);
+
+		byte[] patched = writer.toByteArray();
+
+		store(cacheKey, name, patched, scanned);
+		finishClass(name, patched, scanned, found);
+	}
+
+	/**
+	 * Outputs a class from the cache, if it is there.
+	 *
+	 * @return whether the class was in the cache
+	 */
+	private boolean acceptCached(String cacheKey, Accumulator found) {
+		ClassCache.Entry entry = cache.get(cacheKey);
+
+		if (entry == null) {
+			return false;
+		}
+
+		validateName(entry.name);
+
+		// The cached class was stored before its access changes were applied, so finishClass applies them again and
+		// generates the same shims as patching the class would have
+		ScannedClass scanned = new ScannedClass(entry.accessTransformations);
+		scanned.superClasses.addAll(entry.superClasses);
+		scanned.modIds.addAll(entry.modIds);
+		scanned.annotations.addAll(entry.annotations);
+		scanned.objectHolders.addAll(entry.objectHolders);
+		scanned.subscribeEvents.addAll(entry.subscribeEvents);
+		scanned.eventBusSubscriber.set(entry.eventBusSubscriber);
+
+		// Reports the same diagnostics as patching the class did
+		diagnostics.replay(entry.reports);
+
+		finishClass(entry.name, entry.patched, scanned, found);
+
+		return true;
+	}
+
+	private void store(String cacheKey, String name, byte[] patched, ScannedClass scanned) {
+		if (cacheKey != null) {
+			cache.put(cacheKey, new ClassCache.Entry(name, patched, scanned.superClasses, scanned.modIds, scanned.annotations,
+					scanned.objectHolders, scanned.subscribeEvents, scanned.eventBusSubscriber.get(), scanned.accessTransformations,
+					scanned.reports));
+		}
+	}
+
+	/**
+	 * @return the diagnostics to report to while patching a class, which also keep the reports in the scanned class if
+	 *         it is going to be cached
+	 */
+	private Diagnostics diagnosticsFor(ScannedClass scanned) {
+		return cache != null ? diagnostics.recording(scanned.reports) : diagnostics;
+	}
+
+	private static void validateName(String name) {
 		// Names should match Java internal names, such as "java/lang/Object" or "com/example/Example$1"
 
 		if (name.startsWith("/")) {
@@ -89,64 +282,152 @@ public class PatchworkTransformer implements BiConsumer<String, byte[]> {
 			throw new IllegalArgumentException("Mod jars are not allowed to contain classes in Minecraft's package!");
 		}
 
-		if (name.startsWith("java")) {
+		// Only the java package itself is reserved, shaded javax classes are fine
+		if (name.startsWith("java/")) {
 			throw new IllegalArgumentException("Mod jars are not allowed to contain classes in Java's package!");
 		}
+	}
 
-		ClassReader reader = new ClassReader(content);
-		ClassNode node = new ClassNode();
+	/**
+	 * Builds the chain of Patchwork visitors for a class, in front of the given visitor.
+	 *
+	 * @param name the name of the class
+	 * @param classVisitor the visitor that receives the patched class
+	 * @param stages the stages to include in the chain
+	 * @param scanned receives everything the scanning stages find in the class
+	 * @param found the accumulator of the current thread
+	 * @return the first visitor of the chain
+	 */
+	private ClassVisitor createPatchChain(String name, ClassVisitor classVisitor, EnumSet<Stage> stages, ScannedClass scanned, Accumulator found) {
+		stages.forEach(stage -> stageCounts.get(stage).incrementAndGet());
 
-		List<ObjectHolder> objectHolders = new ArrayList<>();
-		List<SubscribeEvent> subscribeEvents = new ArrayList<>();
-		AtomicReference<EventBusSubscriber> eventBusSubscriber = new AtomicReference<>();
+		Diagnostics classDiagnostics = diagnosticsFor(scanned);
+		ClassVisitor visitor = classVisitor;
 
-		ClassAccessTransformations accessTransformations = new ClassAccessTransformations();
+		if (stages.contains(Stage.STRING_CONSTANTS)) {
+			visitor = new StringConstantRemapper(visitor, remapper.getNaiveRemapper(), classDiagnostics);
+		}
 
-		Consumer<String> modConsumer = classModId -> {
-			LOGGER.trace("Found @Mod annotation at " + name + " (id: " + classModId + ")");
-			modInfo.add(new AbstractMap.SimpleImmutableEntry<>(classModId, name));
-		};
+		if (stages.contains(Stage.ANNOTATIONS)) {
+			Consumer<String> modConsumer = classModId -> {
+				classDiagnostics.report(Level.TRACE, "Found @Mod annotation at %s (id: %s)", name, classModId);
+				scanned.modIds.add(classModId);
+			};
 
-		AnnotationProcessor scanner = new AnnotationProcessor(node, modConsumer, annotationStorage);
-		ObjectHolderScanner objectHolderScanner = new ObjectHolderScanner(scanner, holder -> {
-			objectHolders.add(holder);
+			visitor = new AnnotationProcessor(visitor, modConsumer, scanned.annotations, classDiagnostics);
+		}
 
-			accessTransformations.addFieldTransformation(holder.getField(), AccessTransformation.DEFINALIZE_MAKE_PUBLIC);
-		});
+		if (stages.contains(Stage.OBJECT_HOLDERS)) {
+			visitor = new ObjectHolderScanner(visitor, holder -> {
+				scanned.objectHolders.add(holder);
 
-		EventHandlerScanner eventHandlerScanner = new EventHandlerScanner(objectHolderScanner, eventBusSubscriber::set,
-				subscribeEvent -> {
-			subscribeEvents.add(subscribeEvent);
+				scanned.accessTransformations.addFieldTransformation(holder.getField(), AccessTransformation.DEFINALIZE_MAKE_PUBLIC);
+			});
+		}
 
-			accessTransformations.setClassTransformation(AccessTransformation.MAKE_PUBLIC);
+		if (stages.contains(Stage.EVENT_HANDLERS)) {
+			visitor = new EventHandlerScanner(visitor, scanned.eventBusSubscriber::set, subscribeEvent -> {
+				scanned.subscribeEvents.add(subscribeEvent);
 
-			accessTransformations.addMethodTransformation(subscribeEvent.getMethod(), subscribeEvent.getMethodDescriptor(), AccessTransformation.MAKE_PUBLIC);
-		});
+				scanned.accessTransformations.setClassTransformation(AccessTransformation.MAKE_PUBLIC);
 
-		ItemGroupTransformer itemGroupTransformer = new ItemGroupTransformer(eventHandlerScanner);
-		BlockSettingsTransformer blockSettingsTransformer = new BlockSettingsTransformer(itemGroupTransformer);
-		ExtensibleEnumTransformer extensibleEnumTransformer = new ExtensibleEnumTransformer(blockSettingsTransformer);
-		EventSubclassTransformer eventSubclassTransformer = new EventSubclassTransformer(extensibleEnumTransformer);
-		LevelGeneratorTypeTransformer levelGeneratorTypeTransformer = new LevelGeneratorTypeTransformer(eventSubclassTransformer);
+				scanned.accessTransformations.addMethodTransformation(subscribeEvent.getMethod(), subscribeEvent.getMethodDescriptor(), AccessTransformation.MAKE_PUBLIC);
+			});
+		}
 
-		reader.accept(levelGeneratorTypeTransformer, ClassReader.EXPAND_FRAMES);
+		if (stages.contains(Stage.REDIRECTS)) {
+			visitor = new RedirectTransformer(visitor, redirects);
+		}
 
-		ClassWriter writer = new ClassWriter(0);
+		if (stages.contains(Stage.EVENT_SUBCLASSES)) {
+			visitor = new EventSubclassTransformer(visitor);
+		}
+
+		return new ClassVisitor(Opcodes.ASM7, visitor) {
+			@Override
+			public void visit(int version, int access, String className, String signature, String superName, String[] interfaces) {
+				scanned.superClasses.add(superName);
+				scanned.superClasses.addAll(Arrays.asList(interfaces));
 
-		ModAccessTransformer accessTransformer = new ModAccessTransformer(writer, accessTransformations);
+				super.visit(version, access, className, signature, superName, interfaces);
+			}
+		};
+	}
+
+	/**
+	 * Applies the access changes found while scanning a patched class, generates its shims, and outputs it.
+	 */
+	private void finishClass(String name, byte[] patched, ScannedClass scanned, Accumulator found) {
+		if (!scanned.accessTransformations.isEmpty()) {
+			// Access changes are only known once the whole class has been scanned (a @SubscribeEvent method makes
+			// the class itself public), so apply them in a second pass. This pass only touches access flags, so the
+			// writer copies every method body verbatim.
+			ClassReader patchedReader = new ClassReader(patched);
+			ClassWriter accessWriter = new ClassWriter(patchedReader, 0);
 
-		StringConstantRemapper stringRemapper = new StringConstantRemapper(accessTransformer, remapper.getNaiveRemapper());
-		node.accept(stringRemapper);
+			patchedReader.accept(new ModAccessTransformer(accessWriter, scanned.accessTransformations), 0);
+
+			patched = accessWriter.toByteArray();
+		}
+
+		scanned.objectHolders.forEach(entry -> {
+			if (consolidateObjectHolders) {
+				found.objectHolderApplierEntries.add(new AbstractMap.SimpleImmutableEntry<>(name, entry));
+
+				return;
+			}
 
-		objectHolders.forEach(entry -> {
 			ClassWriter shimWriter = new ClassWriter(0);
 			String shimName = ObjectHolderGenerator.generate(name, entry, shimWriter);
 
-			generatedObjectHolderEntries.add(new AbstractMap.SimpleImmutableEntry<>(shimName, entry));
+			found.generatedObjectHolderEntries.add(new AbstractMap.SimpleImmutableEntry<>(shimName, entry));
 
 			outputConsumer.accept(shimName, shimWriter.toByteArray());
 		});
 
+		List<SubscribeEvent> staticSubscribeEvents = new ArrayList<>();
+		List<SubscribeEvent> instanceSubscribeEvents = new ArrayList<>();
+
+		for (SubscribeEvent entry : scanned.subscribeEvents) {
+			if ((entry.getAccess() & Opcodes.ACC_STATIC) == Opcodes.ACC_STATIC) {
+				staticSubscribeEvents.add(entry);
+			} else {
+				instanceSubscribeEvents.add(entry);
+			}
+		}
+
+		if (consolidateEventShims) {
+			if (!scanned.subscribeEvents.isEmpty()) {
+				found.eventDispatcherSubscribers.add(new EventDispatcherGenerator.Subscriber(name, staticSubscribeEvents, instanceSubscribeEvents));
+			}
+		} else {
+			generateEventShims(name, scanned.subscribeEvents, found);
+		}
+
+		EventBusSubscriber subscriber = scanned.eventBusSubscriber.get();
+
+		if (subscriber != null) {
+			if (staticSubscribeEvents.isEmpty()) {
+				diagnostics.report(Level.WARN, "Ignoring the @EventBusSubscriber annotation on %s because it has no static methods with @SubscribeEvent", name);
+			} else {
+				found.eventBusSubscribers.add(new AbstractMap.SimpleImmutableEntry<>(name, subscriber));
+			}
+		}
+
+		outputConsumer.accept(name, patched);
+
+		for (String modId : scanned.modIds) {
+			found.modInfo.add(new AbstractMap.SimpleImmutableEntry<>(modId, name));
+		}
+
+		found.annotationStorage.addAll(scanned.annotations);
+		found.checker.onClassScanned(name, scanned.subscribeEvents, scanned.superClasses);
+	}
+
+	/**
+	 * Generates a shim class for each {@code @SubscribeEvent} method of a class, and the registrars that register them.
+	 */
+	private void generateEventShims(String name, List<SubscribeEvent> subscribeEvents, Accumulator found) {
 		HashMap<String, SubscribeEvent> subscribeEventStaticShims = new HashMap<>();
 		HashMap<String, SubscribeEvent> subscribeEventInstanceShims = new HashMap<>();
 
@@ -173,7 +454,7 @@ public class PatchworkTransformer implements BiConsumer<String, byte[]> {
 
 			outputConsumer.accept(shimName, shimWriter.toByteArray());
 
-			staticEventRegistrars.add(new AbstractMap.SimpleImmutableEntry<>(shimName, name));
+			found.staticEventRegistrars.add(new AbstractMap.SimpleImmutableEntry<>(shimName, name));
 		}
 
 		if (!subscribeEventInstanceShims.isEmpty()) {
@@ -182,25 +463,8 @@ public class PatchworkTransformer implements BiConsumer<String, byte[]> {
 
 			outputConsumer.accept(shimName, shimWriter.toByteArray());
 
-			instanceEventRegistrars.add(new AbstractMap.SimpleImmutableEntry<>(shimName, name));
+			found.instanceEventRegistrars.add(new AbstractMap.SimpleImmutableEntry<>(shimName, name));
 		}
-
-		if (eventBusSubscriber.get() != null) {
-			if (subscribeEventStaticShims.isEmpty()) {
-				Patchwork.LOGGER.warn("Ignoring the @EventBusSubscriber annotation on %s because it has no static methods with @SubscribeEvent", name);
-			} else {
-				EventBusSubscriber subscriber = eventBusSubscriber.get();
-
-				eventBusSubscribers.add(new AbstractMap.SimpleImmutableEntry<>(name, subscriber));
-			}
-		}
-
-		outputConsumer.accept(name, writer.toByteArray());
-
-		List<String> supers = new ArrayList<>();
-		supers.add(reader.getSuperName());
-		supers.addAll(Arrays.asList(reader.getInterfaces()));
-		checker.onClassScanned(name, subscribeEvents, supers);
 	}
 
 	/**
@@ -210,22 +474,58 @@ public class PatchworkTransformer implements BiConsumer<String, byte[]> {
 	 * @return the primary mod id
 	 */
 	public String finish(Consumer<String> entrypoints) {
+		return finish(entrypoints, true);
+	}
+
+	/**
+	 * Finishes the patching process for a jar that does not need an {@code @Mod} class, such as a library nested in a
+	 * mod. Without one, no initializer is generated, so anything that would be registered by it is reported instead.
+	 *
+	 * @param entrypoints outputs the list of entrypoints for the fabric.mod.json
+	 * @return the primary mod id, or null if the jar has no {@code @Mod} class
+	 */
+	public String finishLibrary(Consumer<String> entrypoints) {
+		return finish(entrypoints, false);
+	}
+
+	private String finish(Consumer<String> entrypoints, boolean requireMod) {
 		if (finished) {
 			throw new IllegalStateException("Already finished!");
 		}
 
 		this.finished = true;
 
+		mergeAccumulators();
+
 		if (modInfo.isEmpty()) {
-			throw new IllegalStateException("Located no classes with an @Mod annotation, could not pick a primary mod!");
+			if (requireMod) {
+				throw new IllegalStateException("Located no classes with an @Mod annotation, could not pick a primary mod!");
+			}
+
+			reportUnregistered();
+			checker.check();
+
+			return null;
 		}
 
-		Map.Entry<String, String> primary = modInfo.peek();
+		// modInfo is sorted by class name, so the primary mod is the @Mod class that comes first alphabetically, rather than
+		// the first one found as it used to be when classes were patched one at a time
+		Map.Entry<String, String> primary = modInfo.get(0);
 		String primaryId = primary.getKey();
 		String primaryClazz = primary.getValue();
 
+		if (!eventDispatcherSubscribers.isEmpty()) {
+			generateEventDispatcher(primaryClazz);
+		}
+
+		if (!objectHolderApplierEntries.isEmpty()) {
+			generateObjectHolderApplier(primaryClazz);
+		}
+
 		generateInitializer(primaryId, primaryClazz, entrypoints);
 
+		eventDispatcherName = null;
+		objectHolderApplierName = null;
 		staticEventRegistrars.clear();
 		instanceEventRegistrars.clear();
 		eventBusSubscribers.clear();
@@ -244,6 +544,67 @@ public class PatchworkTransformer implements BiConsumer<String, byte[]> {
 		return primaryId;
 	}
 
+	private void reportUnregistered() {
+		int objectHolders = generatedObjectHolderEntries.size() + objectHolderApplierEntries.size();
+		int subscribers = staticEventRegistrars.size() + instanceEventRegistrars.size() + eventDispatcherSubscribers.size()
+				+ eventBusSubscribers.size();
+
+		if (objectHolders > 0 || subscribers > 0) {
+			diagnostics.report(Level.WARN, "Found %s object holders and %s event subscribers without an @Mod class to register them from, they will not be registered", objectHolders, subscribers);
+		}
+	}
+
+	private void generateEventDispatcher(String primaryClazz) {
+		ClassWriter dispatcherWriter = new ClassWriter(0);
+		eventDispatcherName = "patchwork_generated/" + primaryClazz + "_EventDispatcher";
+
+		// Registrar methods are named by index, so the subscribers need to be in a stable order
+		eventDispatcherSubscribers.sort(Comparator.comparing(EventDispatcherGenerator.Subscriber::getTargetClass));
+
+		EventDispatcherGenerator.generate(eventDispatcherName, eventDispatcherSubscribers, dispatcherWriter, staticEventRegistrars, instanceEventRegistrars);
+
+		outputConsumer.accept(eventDispatcherName, dispatcherWriter.toByteArray());
+	}
+
+	private void generateObjectHolderApplier(String primaryClazz) {
+		ClassWriter applierWriter = new ClassWriter(0);
+		objectHolderApplierName = "patchwork_generated/" + primaryClazz + "_ObjectHolders";
+
+		// Holders are identified by their index in the applier, so they need to be in a stable order
+		objectHolderApplierEntries.sort(Comparator.comparing((Map.Entry<String, ObjectHolder> entry) -> entry.getKey())
+				.thenComparing(entry -> entry.getValue().getField()));
+
+		ObjectHolderApplierGenerator.generate(objectHolderApplierName, objectHolderApplierEntries, applierWriter);
+
+		outputConsumer.accept(objectHolderApplierName, applierWriter.toByteArray());
+	}
+
+	private void mergeAccumulators() {
+		for (Accumulator found : accumulators.values()) {
+			generatedObjectHolderEntries.addAll(found.generatedObjectHolderEntries);
+			staticEventRegistrars.addAll(found.staticEventRegistrars);
+			instanceEventRegistrars.addAll(found.instanceEventRegistrars);
+			eventBusSubscribers.addAll(found.eventBusSubscribers);
+			modInfo.addAll(found.modInfo);
+			eventDispatcherSubscribers.addAll(found.eventDispatcherSubscribers);
+			objectHolderApplierEntries.addAll(found.objectHolderApplierEntries);
+			annotationStorage.addAll(found.annotationStorage);
+			checker.addAll(found.checker);
+			hierarchy.addAll(found.hierarchy);
+		}
+
+		accumulators.clear();
+
+		// Shim names are derived from the class and member they were generated for, so sorting by them gives a stable
+		// order for the initializer steps.
+		generatedObjectHolderEntries.sort(Map.Entry.comparingByKey());
+		staticEventRegistrars.sort(Map.Entry.comparingByKey());
+		instanceEventRegistrars.sort(Map.Entry.comparingByKey());
+		eventBusSubscribers.sort(Map.Entry.comparingByKey());
+		modInfo.sort(Map.Entry.<String, String>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+		annotationStorage.sortByClass();
+	}
+
 	private void generateInitializer(String id, String clazz, Consumer<String> entrypoints) {
 		ClassWriter initializerWriter = new ClassWriter(0);
 		String initializerName = "patchwork_generated/" + clazz + "Initializer";
@@ -252,15 +613,61 @@ public class PatchworkTransformer implements BiConsumer<String, byte[]> {
 
 		// TODO: Need to check if the base classes are annotated with @OnlyIn / @Environment
 
-		initializerSteps.add(new AbstractMap.SimpleImmutableEntry<>("registerEventRegistrars", new RegisterEventRegistrars(staticEventRegistrars, instanceEventRegistrars)));
+		Consumer<MethodVisitor> registerEventRegistrars = eventDispatcherName == null
+				? new RegisterEventRegistrars(staticEventRegistrars, instanceEventRegistrars)
+				: new RegisterEventDispatcher(eventDispatcherName, staticEventRegistrars, instanceEventRegistrars);
+
+		initializerSteps.add(new AbstractMap.SimpleImmutableEntry<>("registerEventRegistrars", registerEventRegistrars));
 		// TODO: This should probably be first? How do we do event registrars without classloading the target class?
 		initializerSteps.add(new AbstractMap.SimpleImmutableEntry<>("constructTargetMod", new ConstructTargetMod(clazz)));
 		initializerSteps.add(new AbstractMap.SimpleImmutableEntry<>("registerAutomaticSubscribers", new RegisterAutomaticSubscribers(eventBusSubscribers)));
-		initializerSteps.add(new AbstractMap.SimpleImmutableEntry<>("registerObjectHolders", new RegisterObjectHolders(generatedObjectHolderEntries)));
+		Consumer<MethodVisitor> registerObjectHolders = objectHolderApplierName == null
+				? new RegisterObjectHolders(generatedObjectHolderEntries)
+				: new RegisterObjectHolderApplier(objectHolderApplierName);
+
+		initializerSteps.add(new AbstractMap.SimpleImmutableEntry<>("registerObjectHolders", registerObjectHolders));
 
 		ForgeInitializerGenerator.generate(initializerName, id, initializerSteps, initializerWriter);
 
 		entrypoints.accept(initializerName.replace('/', '.'));
 		outputConsumer.accept(initializerName, initializerWriter.toByteArray());
 	}
+
+	/**
+	 * Everything found by the classes patched on a single thread.
+	 */
+	private static class Accumulator {
+		private final List<Map.Entry<String, ObjectHolder>> generatedObjectHolderEntries = new ArrayList<>();
+		private final List<Map.Entry<String, String>> staticEventRegistrars = new ArrayList<>();
+		private final List<Map.Entry<String, String>> instanceEventRegistrars = new ArrayList<>();
+		private final List<Map.Entry<String, EventBusSubscriber>> eventBusSubscribers = new ArrayList<>();
+		private final List<Map.Entry<String, String>> modInfo = new ArrayList<>();
+		private final List<EventDispatcherGenerator.Subscriber> eventDispatcherSubscribers = new ArrayList<>();
+		private final List<Map.Entry<String, ObjectHolder>> objectHolderApplierEntries = new ArrayList<>();
+		private final AnnotationStorage annotationStorage = new AnnotationStorage();
+		private final ClassHierarchy hierarchy = new ClassHierarchy();
+		private final EventSubscriptionChecker checker = new EventSubscriptionChecker(hierarchy);
+	}
+
+	/**
+	 * Everything the scanning stages of the patch chain found in a single class.
+	 */
+	private static class ScannedClass {
+		private final List<ObjectHolder> objectHolders = new ArrayList<>();
+		private final List<SubscribeEvent> subscribeEvents = new ArrayList<>();
+		private final AtomicReference<EventBusSubscriber> eventBusSubscriber = new AtomicReference<>();
+		private final ClassAccessTransformations accessTransformations;
+		private final List<String> superClasses = new ArrayList<>();
+		private final List<String> modIds = new ArrayList<>();
+		private final AnnotationStorage annotations = new AnnotationStorage();
+		private final List<Diagnostics.Report> reports = new ArrayList<>();
+
+		private ScannedClass() {
+			this(new ClassAccessTransformations());
+		}
+
+		private ScannedClass(ClassAccessTransformations accessTransformations) {
+			this.accessTransformations = accessTransformations;
+		}
+	}
 }
@@ -0,0 +1,181 @@
+package com.patchworkmc.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ArtifactFetcherTest {
+	private static final int SIZE = 100000;
+
+	@TempDir
+	Path tempDir;
+
+	private final byte[] data = new byte[SIZE];
+	// The Range header of each request the server received, or null for requests without one
+	private final List<String> ranges = new ArrayList<>();
+	private HttpServer server;
+	private URL url;
+	private Path partial;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		new Random(0).nextBytes(data);
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/files/data.bin", this::serve);
+		server.start();
+
+		url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getAddress().getPort(), "/files/data.bin");
+		partial = tempDir.resolve(url.getHost()).resolve("files/data.bin.part");
+		Files.createDirectories(partial.getParent());
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		String range = exchange.getRequestHeaders().getFirst("Range");
+
+		synchronized (ranges) {
+			ranges.add(range);
+		}
+
+		int start = range == null ? 0 : Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+
+		if (start >= data.length) {
+			exchange.getResponseHeaders().set("Content-Range", "bytes */" + data.length);
+			exchange.sendResponseHeaders(416, -1);
+			exchange.close();
+
+			return;
+		}
+
+		if (range != null) {
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (data.length - 1) + "/" + data.length);
+		}
+
+		exchange.sendResponseHeaders(range == null ? 200 : 206, data.length - start);
+
+		try (OutputStream body = exchange.getResponseBody()) {
+			body.write(data, start, data.length - start);
+		}
+	}
+
+	@Test
+	public void downloadsFile() throws IOException {
+		try (ArtifactFetcher fetcher = new ArtifactFetcher(tempDir, 1)) {
+			Path file = fetcher.download(url, sha1(data));
+
+			assertArrayEquals(data, Files.readAllBytes(file));
+		}
+
+		assertEquals(Arrays.asList((String) null), ranges);
+	}
+
+	@Test
+	public void resumesPartialDownload() throws IOException {
+		Files.write(partial, Arrays.copyOf(data, SIZE / 2));
+
+		try (ArtifactFetcher fetcher = new ArtifactFetcher(tempDir, 1)) {
+			Path file = fetcher.download(url, sha1(data));
+
+			assertArrayEquals(data, Files.readAllBytes(file));
+		}
+
+		assertEquals(Arrays.asList("bytes=" + SIZE / 2 + "-"), ranges);
+	}
+
+	@Test
+	public void keepsCompletePartialDownload() throws IOException {
+		Files.write(partial, data);
+
+		try (ArtifactFetcher fetcher = new ArtifactFetcher(tempDir, 1)) {
+			Path file = fetcher.download(url, sha1(data));
+
+			assertArrayEquals(data, Files.readAllBytes(file));
+		}
+
+		// The server answered 416 to the range, and the file was not downloaded again
+		assertEquals(Arrays.asList("bytes=" + SIZE + "-"), ranges);
+	}
+
+	@Test
+	public void keepsCompletePartialDownloadWithoutHash() throws IOException {
+		Files.write(partial, data);
+
+		try (ArtifactFetcher fetcher = new ArtifactFetcher(tempDir, 1)) {
+			Path file = fetcher.download(url, null);
+
+			assertArrayEquals(data, Files.readAllBytes(file));
+		}
+
+		assertEquals(Arrays.asList("bytes=" + SIZE + "-"), ranges);
+	}
+
+	@Test
+	public void redownloadsStalePartialDownload() throws IOException {
+		// Longer than the file on the server, so it can't be a prefix of it
+		byte[] stale = new byte[SIZE + 10];
+		new Random(1).nextBytes(stale);
+		Files.write(partial, stale);
+
+		try (ArtifactFetcher fetcher = new ArtifactFetcher(tempDir, 1)) {
+			Path file = fetcher.download(url, sha1(data));
+
+			assertArrayEquals(data, Files.readAllBytes(file));
+		}
+
+		assertEquals(Arrays.asList("bytes=" + (SIZE + 10) + "-", null), ranges);
+	}
+
+	@Test
+	public void rejectsCorruptDownload() throws IOException {
+		byte[] other = data.clone();
+		other[0]++;
+
+		try (ArtifactFetcher fetcher = new ArtifactFetcher(tempDir, 1)) {
+			assertThrows(IOException.class, () -> fetcher.download(url, sha1(other)));
+		}
+
+		assertFalse(Files.exists(partial));
+		assertFalse(Files.exists(tempDir.resolve(url.getHost()).resolve("files/data.bin")));
+	}
+
+	private static String sha1(byte[] bytes) {
+		try {
+			StringBuilder hex = new StringBuilder();
+
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+				hex.append(String.format("%02x", b));
+			}
+
+			return hex.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-1 is always supported", ex);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.patchworkmc.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RawZipWriterTest {
+	// Larger than 64 KiB, so that the sizes take up more than the low two bytes of their fields
+	private static final int SIZE = 200000;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void writtenEntriesReadBackAsStream() throws IOException {
+		byte[] data = randomData();
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		Path jar = tempDir.resolve("written.jar");
+
+		try (RawZipWriter writer = new RawZipWriter(jar)) {
+			writer.write("data.bin", 0, ZipEntry.STORED, data, crc.getValue(), data.length);
+		}
+
+		assertEntry(jar, "data.bin", data);
+	}
+
+	@Test
+	public void copiedEntriesReadBackAsStream() throws IOException {
+		byte[] data = randomData();
+		Path source = tempDir.resolve("source.jar");
+
+		try (OutputStream file = Files.newOutputStream(source);
+				ZipOutputStream zip = new ZipOutputStream(file)) {
+			// Deflated entries written to a stream have their sizes in a data descriptor, which the copy has to move into
+			// the local header
+			zip.putNextEntry(new ZipEntry("data.bin"));
+			zip.write(data);
+			zip.closeEntry();
+		}
+
+		Path jar = tempDir.resolve("copied.jar");
+
+		try (RawZipFile input = new RawZipFile(source);
+				RawZipWriter writer = new RawZipWriter(jar)) {
+			for (RawZipFile.Entry entry : input.getEntries()) {
+				writer.copy(input, entry);
+			}
+		}
+
+		assertEntry(jar, "data.bin", data);
+	}
+
+	private static void assertEntry(Path jar, String name, byte[] data) throws IOException {
+		try (InputStream file = Files.newInputStream(jar);
+				ZipInputStream zip = new ZipInputStream(file)) {
+			ZipEntry entry = zip.getNextEntry();
+
+			assertEquals(name, entry.getName());
+			assertEquals(data.length, entry.getSize());
+			assertArrayEquals(data, IOUtils.toByteArray(zip));
+			assertNull(zip.getNextEntry());
+		}
+	}
+
+	private static byte[] randomData() {
+		byte[] data = new byte[SIZE];
+		// Only a few distinct bytes, so that deflating it does something
+		Random random = new Random(0);
+
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) random.nextInt(4);
+		}
+
+		return data;
+	}
+}
@@ -0,0 +1,148 @@
+package com.patchworkmc.lazy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+
+import com.patchworkmc.mapping.remapper.PatchworkRemapper;
+import com.patchworkmc.transformer.ClassCache;
+
+public class LazyPatchingClassLoaderTest {
+	private static final String CLASS_NAME = "com/example/Deferred";
+	private static final String SRG_OWNER = "net/minecraft/util/Example";
+	private static final String INTERMEDIARY_OWNER = "net/minecraft/class_1234";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void deferredClassesArePatchedOnLoadAndCached() throws Exception {
+		Path classes = tempDir.resolve("classes");
+		Path classFile = classes.resolve(CLASS_NAME + ".class");
+		Path index = classes.resolve(LazyPatcher.INDEX);
+
+		Files.createDirectories(classFile.getParent());
+		Files.write(classFile, createClass());
+		Files.createDirectories(index.getParent());
+		Files.write(index, LazyPatcher.writeIndex(Collections.singletonList(CLASS_NAME)));
+
+		PatchworkRemapper remapper = new PatchworkRemapper(out -> {
+			out.acceptClass(SRG_OWNER, INTERMEDIARY_OWNER);
+			out.acceptMethod(new IMappingProvider.Member(SRG_OWNER, "func_1234_a", "()V"), "method_1234");
+		});
+		CountingCache cache = new CountingCache(tempDir.resolve("cache"), remapper);
+		List<byte[]> patched = new ArrayList<>();
+
+		LazyPatcher patcher = new LazyPatcher(remapper, cache) {
+			@Override
+			public byte[] patch(byte[] content) {
+				byte[] bytes = super.patch(content);
+				patched.add(bytes);
+
+				return bytes;
+			}
+		};
+
+		URL[] urls = { classes.toUri().toURL() };
+		Class<?> first;
+
+		try (LazyPatchingClassLoader loader = new LazyPatchingClassLoader(urls, null, patcher)) {
+			first = Class.forName(CLASS_NAME.replace('/', '.'), false, loader);
+
+			assertSame(loader, first.getClassLoader());
+		}
+
+		assertEquals(1, patched.size());
+		assertEquals(0, cache.hits);
+		assertEquals(INTERMEDIARY_OWNER + ".method_1234()V", findCall(patched.get(0)));
+
+		// A second loader patches the class again, which is served from the cache this time
+		try (LazyPatchingClassLoader loader = new LazyPatchingClassLoader(urls, null, patcher)) {
+			Class<?> second = Class.forName(CLASS_NAME.replace('/', '.'), false, loader);
+
+			assertNotSame(first, second);
+		}
+
+		assertEquals(2, patched.size());
+		assertEquals(1, cache.hits);
+		assertArrayEquals(patched.get(0), patched.get(1));
+	}
+
+	/**
+	 * @return a class with a method that calls a Minecraft method by its srg name
+	 */
+	private static byte[] createClass() {
+		ClassWriter writer = new ClassWriter(0);
+
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, CLASS_NAME, null, "java/lang/Object", null);
+
+		MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "call", "()V", null, null);
+		method.visitCode();
+		method.visitMethodInsn(Opcodes.INVOKESTATIC, SRG_OWNER, "func_1234_a", "()V", false);
+		method.visitInsn(Opcodes.RETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @return the method called by the {@code call} method of a class, as owner.name + descriptor
+	 */
+	private static String findCall(byte[] bytes) {
+		StringBuilder call = new StringBuilder();
+
+		new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM7) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM7) {
+					@Override
+					public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+						call.append(owner).append('.').append(name).append(descriptor);
+					}
+				};
+			}
+		}, 0);
+
+		return call.toString();
+	}
+
+	private static class CountingCache extends ClassCache {
+		private int hits;
+
+		private CountingCache(Path directory, PatchworkRemapper remapper) {
+			super(directory, 1024 * 1024, 1024 * 1024, remapper);
+		}
+
+		@Override
+		public Entry get(String key) {
+			Entry entry = super.get(key);
+
+			if (entry != null) {
+				hits++;
+			}
+
+			return entry;
+		}
+	}
+}